@@ -0,0 +1,48 @@
+package com.example.jwtverifier;
+
+import java.security.AlgorithmParameters;
+import java.security.GeneralSecurityException;
+import java.security.interfaces.ECPrivateKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.ECParameterSpec;
+
+/**
+ * ES256 algorithm, ECDSA on the P-256 curve with SHA-256. The P1363 signature
+ * format is the fixed length r and s concatenation used by JWS, so no DER
+ * conversion is needed.
+ */
+public class EcdsaAlgorithm extends SignatureAlgorithm {
+    static final ECParameterSpec P256 = p256();
+
+    public EcdsaAlgorithm(String keyId, ECPublicKey publicKey, ECPrivateKey privateKey) {
+        super("ES256", "SHA256withECDSAinP1363Format", 64, keyId, publicKey, privateKey);
+
+        if (!isP256(publicKey.getParams())) {
+            throw new IllegalArgumentException("ES256 key " + keyId + " must be on the P-256 curve.");
+        }
+    }
+
+    @Override
+    public ECPublicKey getPublicKey() {
+        return (ECPublicKey) super.getPublicKey();
+    }
+
+    // ECParameterSpec has no equals, and other 256 bit curves like secp256k1 have the same field size.
+    private static boolean isP256(ECParameterSpec parameters) {
+        return P256.getCurve().equals(parameters.getCurve())
+                && P256.getGenerator().equals(parameters.getGenerator())
+                && P256.getOrder().equals(parameters.getOrder())
+                && P256.getCofactor() == parameters.getCofactor();
+    }
+
+    private static ECParameterSpec p256() {
+        try {
+            AlgorithmParameters parameters = AlgorithmParameters.getInstance("EC");
+            parameters.init(new ECGenParameterSpec("secp256r1"));
+            return parameters.getParameterSpec(ECParameterSpec.class);
+        } catch (GeneralSecurityException exception) {
+            throw new IllegalStateException("The P-256 curve is not available.", exception);
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.jwtverifier;
+
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.interfaces.EdECKey;
+import java.security.spec.NamedParameterSpec;
+
+/**
+ * EdDSA algorithm with Ed25519 keys.
+ */
+public class EdDsaAlgorithm extends SignatureAlgorithm {
+    public EdDsaAlgorithm(String keyId, PublicKey publicKey, PrivateKey privateKey) {
+        super("EdDSA", "Ed25519", 64, keyId, publicKey, privateKey);
+
+        if (!(publicKey instanceof EdECKey edECKey)
+                || !NamedParameterSpec.ED25519.getName().equals(edECKey.getParams().getName())) {
+            throw new IllegalArgumentException("EdDSA key " + keyId + " must be an Ed25519 key.");
+        }
+    }
+}
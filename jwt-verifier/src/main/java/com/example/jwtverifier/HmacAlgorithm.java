@@ -0,0 +1,93 @@
+package com.example.jwtverifier;
+
+import com.auth0.jwt.exceptions.SignatureGenerationException;
+
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * HS256 algorithm which prepares the key material once and keeps one
+ * initialized Mac instance per thread. Mac instances are not thread-safe,
+ * but they reset after every doFinal call, so a thread can reuse its own
+ * instance for every token it signs or verifies.
+ */
+public class HmacAlgorithm extends JwsAlgorithm {
+    private static final String JCA_NAME = "HmacSHA256";
+    private static final int SIGNATURE_LENGTH = 32;
+
+    private final SecretKeySpec secretKey;
+    private final ThreadLocal<Mac> mac;
+    private final ThreadLocal<byte[]> expectedSignature = ThreadLocal.withInitial(() -> new byte[SIGNATURE_LENGTH]);
+
+    public HmacAlgorithm(String keyId, String secret) {
+        super("HS256", JCA_NAME, keyId);
+
+        if (secret == null || secret.isEmpty()) {
+            throw new IllegalArgumentException("The secret cannot be null or empty.");
+        }
+
+        this.secretKey = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), JCA_NAME);
+        this.mac = ThreadLocal.withInitial(this::createMac);
+
+        // Fail on startup instead of on the first request if the key can not be used.
+        createMac();
+    }
+
+    @Override
+    public boolean canSign() {
+        return true;
+    }
+
+    @Override
+    public boolean verifySignature(
+            byte[] content,
+            int contentOffset,
+            int contentLength,
+            byte[] signature,
+            int signatureOffset,
+            int signatureLength) {
+
+        if (signatureLength != SIGNATURE_LENGTH) {
+            return false;
+        }
+
+        Mac threadMac = mac.get();
+        byte[] expected = expectedSignature.get();
+
+        threadMac.update(content, contentOffset, contentLength);
+
+        try {
+            threadMac.doFinal(expected, 0);
+        } catch (ShortBufferException exception) {
+            throw new IllegalStateException(exception);
+        }
+
+        // Constant time comparison, the loop does not stop on the first difference.
+        int difference = 0;
+
+        for (int i = 0; i < SIGNATURE_LENGTH; i++) {
+            difference |= expected[i] ^ signature[signatureOffset + i];
+        }
+
+        return difference == 0;
+    }
+
+    @Override
+    protected byte[] signContent(byte[] content) throws SignatureGenerationException {
+        return mac.get().doFinal(content);
+    }
+
+    private Mac createMac() {
+        try {
+            Mac newMac = Mac.getInstance(JCA_NAME);
+            newMac.init(secretKey);
+            return newMac;
+        } catch (NoSuchAlgorithmException | InvalidKeyException exception) {
+            throw new IllegalStateException("Could not initialize " + JCA_NAME + " mac.", exception);
+        }
+    }
+}
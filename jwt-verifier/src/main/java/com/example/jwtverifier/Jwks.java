@@ -0,0 +1,149 @@
+package com.example.jwtverifier;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECPoint;
+import java.security.spec.ECPublicKeySpec;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Conversion between the public keys of the supported algorithms and their
+ * JSON Web Key representation (RFC 7517, RFC 7518 and RFC 8037).
+ */
+public final class Jwks {
+    private static final int P256_COORDINATE_LENGTH = 32;
+
+    /* DER encoding of an Ed25519 SubjectPublicKeyInfo without the 32 bytes
+     * of the raw public key, which is what the JWK x parameter contains. */
+    private static final byte[] ED25519_X509_PREFIX = {
+            0x30, 0x2a, 0x30, 0x05, 0x06, 0x03, 0x2b, 0x65, 0x70, 0x03, 0x21, 0x00
+    };
+    private static final int ED25519_KEY_LENGTH = 32;
+
+    private Jwks() {
+    }
+
+    /**
+     * Returns the public JWK of the algorithm key or null for algorithms
+     * whose keys must not be published, like HMAC secrets.
+     */
+    public static Map<String, Object> toJwk(JwsAlgorithm algorithm) {
+        if (algorithm instanceof EcdsaAlgorithm ecdsaAlgorithm) {
+            ECPublicKey publicKey = ecdsaAlgorithm.getPublicKey();
+            Map<String, Object> jwk = createJwk("EC", algorithm);
+
+            jwk.put("crv", "P-256");
+            jwk.put("x", encode(unsignedBytes(publicKey.getW().getAffineX(), P256_COORDINATE_LENGTH)));
+            jwk.put("y", encode(unsignedBytes(publicKey.getW().getAffineY(), P256_COORDINATE_LENGTH)));
+
+            return jwk;
+        }
+
+        if (algorithm instanceof EdDsaAlgorithm edDsaAlgorithm) {
+            byte[] encoded = edDsaAlgorithm.getPublicKey().getEncoded();
+            byte[] rawKey = new byte[ED25519_KEY_LENGTH];
+            System.arraycopy(encoded, ED25519_X509_PREFIX.length, rawKey, 0, ED25519_KEY_LENGTH);
+
+            Map<String, Object> jwk = createJwk("OKP", algorithm);
+
+            jwk.put("crv", "Ed25519");
+            jwk.put("x", encode(rawKey));
+
+            return jwk;
+        }
+
+        return null;
+    }
+
+    /**
+     * Creates a verification only algorithm from a public JWK. Returns null
+     * for keys with an unsupported type, curve or use.
+     */
+    public static JwsAlgorithm toAlgorithm(JsonNode jwk) throws GeneralSecurityException {
+        String keyId = jwk.path("kid").asText(null);
+        String keyType = jwk.path("kty").asText();
+        String curve = jwk.path("crv").asText();
+        String use = jwk.path("use").asText("sig");
+
+        if (keyId == null || !"sig".equals(use)) {
+            return null;
+        }
+
+        if ("EC".equals(keyType) && "P-256".equals(curve)) {
+            ECPoint point = new ECPoint(
+                    new BigInteger(1, decode(jwk.path("x").asText())),
+                    new BigInteger(1, decode(jwk.path("y").asText()))
+            );
+
+            ECPublicKeySpec keySpec = new ECPublicKeySpec(point, EcdsaAlgorithm.P256);
+            ECPublicKey publicKey = (ECPublicKey) KeyFactory.getInstance("EC").generatePublic(keySpec);
+
+            return new EcdsaAlgorithm(keyId, publicKey, null);
+        }
+
+        if ("OKP".equals(keyType) && "Ed25519".equals(curve)) {
+            byte[] rawKey = decode(jwk.path("x").asText());
+
+            if (rawKey.length != ED25519_KEY_LENGTH) {
+                throw new InvalidKeySpecException("Ed25519 key " + keyId + " must be 32 bytes long.");
+            }
+
+            byte[] encoded = new byte[ED25519_X509_PREFIX.length + ED25519_KEY_LENGTH];
+            System.arraycopy(ED25519_X509_PREFIX, 0, encoded, 0, ED25519_X509_PREFIX.length);
+            System.arraycopy(rawKey, 0, encoded, ED25519_X509_PREFIX.length, ED25519_KEY_LENGTH);
+
+            PublicKey publicKey = KeyFactory.getInstance("Ed25519").generatePublic(new X509EncodedKeySpec(encoded));
+
+            return new EdDsaAlgorithm(keyId, publicKey, null);
+        }
+
+        return null;
+    }
+
+    private static Map<String, Object> createJwk(String keyType, JwsAlgorithm algorithm) {
+        Map<String, Object> jwk = new LinkedHashMap<>();
+
+        jwk.put("kty", keyType);
+        jwk.put("kid", algorithm.getKeyId());
+        jwk.put("use", "sig");
+        jwk.put("alg", algorithm.getName());
+
+        return jwk;
+    }
+
+    private static byte[] unsignedBytes(BigInteger value, int length) {
+        byte[] bytes = value.toByteArray();
+
+        if (bytes.length == length) {
+            return bytes;
+        }
+
+        // BigInteger adds a leading sign byte or omits leading zero bytes.
+        byte[] padded = new byte[length];
+        int copiedLength = Math.min(bytes.length, length);
+        System.arraycopy(bytes, bytes.length - copiedLength, padded, length - copiedLength, copiedLength);
+
+        return padded;
+    }
+
+    private static String encode(byte[] bytes) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    private static byte[] decode(String value) throws InvalidKeySpecException {
+        try {
+            return Base64.getUrlDecoder().decode(value);
+        } catch (IllegalArgumentException exception) {
+            throw new InvalidKeySpecException("Key parameter is not valid base64url.", exception);
+        }
+    }
+}
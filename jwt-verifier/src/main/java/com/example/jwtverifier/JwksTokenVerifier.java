@@ -0,0 +1,168 @@
+package com.example.jwtverifier;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.JWTVerifier;
+import com.auth0.jwt.exceptions.JWTVerificationException;
+import com.auth0.jwt.interfaces.DecodedJWT;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.security.GeneralSecurityException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Verifies tokens locally with the public keys published by the issuing
+ * service on its JWKS endpoint. Keys are fetched once and kept for the
+ * max-age announced in the Cache-Control header of the endpoint. A token
+ * signed with an unknown key id triggers a refresh, at most once per
+ * minimum refresh interval, so newly rotated keys are picked up without
+ * letting invalid tokens flood the issuing service.
+ *
+ * <pre>
+ * JwksTokenVerifier verifier = new JwksTokenVerifier(
+ *         URI.create("https://auth.example.com/.well-known/jwks.json"),
+ *         "auth.example.com");
+ *
+ * DecodedJWT token = verifier.verify(accessToken);
+ * </pre>
+ *
+ * Instances are thread-safe and should be shared.
+ */
+public class JwksTokenVerifier {
+    private static final System.Logger LOGGER = System.getLogger(JwksTokenVerifier.class.getName());
+    private static final Pattern MAX_AGE = Pattern.compile("max-age=(\\d+)");
+    private static final Duration DEFAULT_MAX_AGE = Duration.ofMinutes(5);
+
+    private final URI jwksUri;
+    private final String issuer;
+    private final HttpClient httpClient;
+    private final Duration minimumRefreshInterval;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private volatile Map<String, JWTVerifier> verifiers = Map.of();
+    private volatile Instant keysExpireAt = Instant.MIN;
+    private volatile Instant lastRefreshAt = Instant.MIN;
+
+    public JwksTokenVerifier(URI jwksUri, String issuer) {
+        this(jwksUri, issuer, HttpClient.newHttpClient(), Duration.ofSeconds(30));
+    }
+
+    public JwksTokenVerifier(URI jwksUri, String issuer, HttpClient httpClient, Duration minimumRefreshInterval) {
+        this.jwksUri = jwksUri;
+        this.issuer = issuer;
+        this.httpClient = httpClient;
+        this.minimumRefreshInterval = minimumRefreshInterval;
+    }
+
+    /**
+     * Verifies the signature, issuer and time claims of the token.
+     *
+     * @throws JWTVerificationException if the token is not valid or was
+     * signed with a key which is not published by the issuing service.
+     */
+    public DecodedJWT verify(String token) throws JWTVerificationException {
+        DecodedJWT decodedJWT = JWT.decode(token);
+        String keyId = decodedJWT.getKeyId();
+
+        if (keyId == null) {
+            throw new JWTVerificationException("Token does not contain the kid header.");
+        }
+
+        JWTVerifier verifier = findVerifier(keyId);
+
+        if (verifier == null) {
+            throw new JWTVerificationException("Token key " + keyId + " is not published by the issuer.");
+        }
+
+        return verifier.verify(decodedJWT);
+    }
+
+    private JWTVerifier findVerifier(String keyId) {
+        Instant now = Instant.now();
+
+        if (now.isAfter(keysExpireAt)) {
+            refresh(now);
+        }
+
+        JWTVerifier verifier = verifiers.get(keyId);
+
+        if (verifier == null && now.isAfter(lastRefreshAt.plus(minimumRefreshInterval))) {
+            refresh(now);
+            verifier = verifiers.get(keyId);
+        }
+
+        return verifier;
+    }
+
+    private synchronized void refresh(Instant requestedAt) {
+        // Another thread has refreshed the keys while this one was waiting.
+        if (lastRefreshAt.isAfter(requestedAt)) {
+            return;
+        }
+
+        lastRefreshAt = Instant.now();
+
+        // Failed refreshes keep the previous keys and are retried after the minimum refresh interval.
+        keysExpireAt = lastRefreshAt.plus(minimumRefreshInterval);
+
+        try {
+            HttpRequest request = HttpRequest.newBuilder(jwksUri).GET().build();
+            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+
+            if (response.statusCode() != 200) {
+                LOGGER.log(System.Logger.Level.WARNING, "JWKS endpoint {0} returned status {1}.", jwksUri, response.statusCode());
+                return;
+            }
+
+            Map<String, JWTVerifier> refreshedVerifiers = new HashMap<>();
+
+            for (JsonNode jwk : objectMapper.readTree(response.body()).path("keys")) {
+                JwsAlgorithm algorithm = toAlgorithm(jwk);
+
+                if (algorithm != null) {
+                    refreshedVerifiers.put(algorithm.getKeyId(), JWT.require(algorithm).withIssuer(issuer).build());
+                }
+            }
+
+            verifiers = Map.copyOf(refreshedVerifiers);
+            keysExpireAt = lastRefreshAt.plus(maxAge(response));
+        } catch (IOException exception) {
+            LOGGER.log(System.Logger.Level.WARNING, "Could not refresh keys from JWKS endpoint " + jwksUri + ".", exception);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Invalid keys are skipped, so they do not take the other keys of the set with them.
+    private JwsAlgorithm toAlgorithm(JsonNode jwk) {
+        try {
+            return Jwks.toAlgorithm(jwk);
+        } catch (GeneralSecurityException | IllegalArgumentException exception) {
+            LOGGER.log(
+                    System.Logger.Level.WARNING,
+                    "Skipping invalid key " + jwk.path("kid").asText() + " from JWKS endpoint " + jwksUri + ".",
+                    exception
+            );
+            return null;
+        }
+    }
+
+    private static Duration maxAge(HttpResponse<String> response) {
+        return response.headers()
+                .firstValue("Cache-Control")
+                .map(MAX_AGE::matcher)
+                .filter(Matcher::find)
+                .map(matcher -> Duration.ofSeconds(Long.parseLong(matcher.group(1))))
+                .orElse(DEFAULT_MAX_AGE);
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.jwtverifier;
+
+import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.exceptions.SignatureGenerationException;
+import com.auth0.jwt.exceptions.SignatureVerificationException;
+import com.auth0.jwt.interfaces.DecodedJWT;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Base class of the algorithms in this library. Every algorithm is bound to
+ * a key id, which is written to the kid header of signed tokens, and can
+ * verify a signature over raw bytes without throwing an exception.
+ */
+public abstract class JwsAlgorithm extends Algorithm {
+    private final String keyId;
+
+    protected JwsAlgorithm(String name, String description, String keyId) {
+        super(name, description);
+        this.keyId = keyId;
+    }
+
+    public String getKeyId() {
+        return keyId;
+    }
+
+    @Override
+    public String getSigningKeyId() {
+        return keyId;
+    }
+
+    /**
+     * Returns true if the algorithm holds the private or secret key
+     * needed for signing, false if it can only verify signatures.
+     */
+    public abstract boolean canSign();
+
+    /**
+     * Verifies the signature over the signing input, which is the
+     * encoded header and payload of a token separated by a dot.
+     */
+    public abstract boolean verifySignature(
+            byte[] content,
+            int contentOffset,
+            int contentLength,
+            byte[] signature,
+            int signatureOffset,
+            int signatureLength);
+
+    protected abstract byte[] signContent(byte[] content) throws SignatureGenerationException;
+
+    @Override
+    public void verify(DecodedJWT jwt) throws SignatureVerificationException {
+        byte[] content = (jwt.getHeader() + "." + jwt.getPayload()).getBytes(StandardCharsets.US_ASCII);
+        byte[] signature;
+
+        try {
+            signature = Base64.getUrlDecoder().decode(jwt.getSignature());
+        } catch (IllegalArgumentException exception) {
+            throw new SignatureVerificationException(this, exception);
+        }
+
+        if (!verifySignature(content, 0, content.length, signature, 0, signature.length)) {
+            throw new SignatureVerificationException(this);
+        }
+    }
+
+    @Override
+    public byte[] sign(byte[] headerBytes, byte[] payloadBytes) throws SignatureGenerationException {
+        byte[] content = new byte[headerBytes.length + 1 + payloadBytes.length];
+
+        System.arraycopy(headerBytes, 0, content, 0, headerBytes.length);
+        content[headerBytes.length] = '.';
+        System.arraycopy(payloadBytes, 0, content, headerBytes.length + 1, payloadBytes.length);
+
+        return signContent(content);
+    }
+
+    @Override
+    @Deprecated
+    public byte[] sign(byte[] contentBytes) throws SignatureGenerationException {
+        return signContent(contentBytes);
+    }
+}
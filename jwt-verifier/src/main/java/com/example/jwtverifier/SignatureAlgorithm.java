@@ -0,0 +1,105 @@
+package com.example.jwtverifier;
+
+import com.auth0.jwt.exceptions.SignatureGenerationException;
+
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.SignatureException;
+
+/**
+ * Base class of the asymmetric algorithms. Signature instances are not
+ * thread-safe, so every thread keeps its own instance and initializes it
+ * with the key before each use, which is much cheaper than looking up a
+ * new instance from the security providers.
+ */
+public abstract class SignatureAlgorithm extends JwsAlgorithm {
+    private final PublicKey publicKey;
+    private final PrivateKey privateKey;
+    private final int signatureLength;
+    private final ThreadLocal<Signature> signature;
+
+    protected SignatureAlgorithm(
+            String name,
+            String jcaName,
+            int signatureLength,
+            String keyId,
+            PublicKey publicKey,
+            PrivateKey privateKey) {
+
+        super(name, jcaName, keyId);
+
+        if (publicKey == null) {
+            throw new IllegalArgumentException("The public key cannot be null.");
+        }
+
+        this.publicKey = publicKey;
+        this.privateKey = privateKey;
+        this.signatureLength = signatureLength;
+        this.signature = ThreadLocal.withInitial(() -> createSignature(jcaName));
+
+        // Fail on startup instead of on the first request if the algorithm is not available.
+        createSignature(jcaName);
+    }
+
+    public PublicKey getPublicKey() {
+        return publicKey;
+    }
+
+    @Override
+    public boolean canSign() {
+        return privateKey != null;
+    }
+
+    @Override
+    public boolean verifySignature(
+            byte[] content,
+            int contentOffset,
+            int contentLength,
+            byte[] signatureBytes,
+            int signatureOffset,
+            int signatureLength) {
+
+        if (signatureLength != this.signatureLength) {
+            return false;
+        }
+
+        try {
+            Signature threadSignature = signature.get();
+            threadSignature.initVerify(publicKey);
+            threadSignature.update(content, contentOffset, contentLength);
+            return threadSignature.verify(signatureBytes, signatureOffset, signatureLength);
+        } catch (InvalidKeyException | SignatureException exception) {
+            return false;
+        }
+    }
+
+    @Override
+    protected byte[] signContent(byte[] content) throws SignatureGenerationException {
+        if (privateKey == null) {
+            throw new SignatureGenerationException(
+                    this,
+                    new IllegalStateException("Key " + getKeyId() + " can only verify signatures.")
+            );
+        }
+
+        try {
+            Signature threadSignature = signature.get();
+            threadSignature.initSign(privateKey);
+            threadSignature.update(content);
+            return threadSignature.sign();
+        } catch (InvalidKeyException | SignatureException exception) {
+            throw new SignatureGenerationException(this, exception);
+        }
+    }
+
+    private static Signature createSignature(String jcaName) {
+        try {
+            return Signature.getInstance(jcaName);
+        } catch (NoSuchAlgorithmException exception) {
+            throw new IllegalStateException("Signature algorithm " + jcaName + " is not available.", exception);
+        }
+    }
+}
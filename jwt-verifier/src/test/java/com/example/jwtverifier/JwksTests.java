@@ -0,0 +1,102 @@
+package com.example.jwtverifier;
+
+import com.auth0.jwt.JWT;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.Test;
+
+import java.security.spec.InvalidKeySpecException;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class JwksTests {
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	@Test
+	void ecdsaKeyIsPublishedAndParsedBack() throws Exception {
+		EcdsaAlgorithm algorithm = TestAlgorithms.ecdsa("ec-key");
+		Map<String, Object> jwk = Jwks.toJwk(algorithm);
+
+		assertEquals("EC", jwk.get("kty"));
+		assertEquals("P-256", jwk.get("crv"));
+		assertEquals("ES256", jwk.get("alg"));
+		assertNull(jwk.get("d"));
+
+		assertParsedKeyVerifies(algorithm, jwk, EcdsaAlgorithm.class);
+	}
+
+	@Test
+	void edDsaKeyIsPublishedAndParsedBack() throws Exception {
+		EdDsaAlgorithm algorithm = TestAlgorithms.edDsa("ed-key");
+		Map<String, Object> jwk = Jwks.toJwk(algorithm);
+
+		assertEquals("OKP", jwk.get("kty"));
+		assertEquals("Ed25519", jwk.get("crv"));
+		assertEquals("EdDSA", jwk.get("alg"));
+		assertNull(jwk.get("d"));
+
+		assertParsedKeyVerifies(algorithm, jwk, EdDsaAlgorithm.class);
+	}
+
+	@Test
+	void hmacSecretIsNotPublished() {
+		assertNull(Jwks.toJwk(new HmacAlgorithm("hmac-key", "test-secret")));
+	}
+
+	@Test
+	void unsupportedKeysAreSkipped() throws Exception {
+		assertNull(Jwks.toAlgorithm(jwk("{\"kty\": \"RSA\", \"kid\": \"rsa-key\", \"n\": \"AQAB\", \"e\": \"AQAB\"}")));
+		assertNull(Jwks.toAlgorithm(jwk("{\"kty\": \"EC\", \"kid\": \"ec-key\", \"crv\": \"P-384\"}")));
+
+		ObjectNode encryptionKey = objectMapper.valueToTree(Jwks.toJwk(TestAlgorithms.ecdsa("ec-key")));
+		encryptionKey.put("use", "enc");
+		assertNull(Jwks.toAlgorithm(encryptionKey));
+
+		ObjectNode keyWithoutId = objectMapper.valueToTree(Jwks.toJwk(TestAlgorithms.edDsa("ed-key")));
+		keyWithoutId.remove("kid");
+		assertNull(Jwks.toAlgorithm(keyWithoutId));
+	}
+
+	@Test
+	void edDsaKeyOfWrongLengthIsRejected() throws Exception {
+		JsonNode jwk = jwk("{\"kty\": \"OKP\", \"kid\": \"ed-key\", \"crv\": \"Ed25519\", \"x\": \"AAAA\"}");
+
+		assertThrows(InvalidKeySpecException.class, () -> Jwks.toAlgorithm(jwk));
+	}
+
+	@Test
+	void keyWhichIsNotBase64UrlIsRejected() throws Exception {
+		JsonNode jwk = jwk("{\"kty\": \"EC\", \"kid\": \"ec-key\", \"crv\": \"P-256\", \"x\": \"*\", \"y\": \"*\"}");
+
+		assertThrows(InvalidKeySpecException.class, () -> Jwks.toAlgorithm(jwk));
+	}
+
+	private void assertParsedKeyVerifies(
+			JwsAlgorithm algorithm,
+			Map<String, Object> jwk,
+			Class<? extends JwsAlgorithm> expectedType) throws Exception {
+
+		// Published keys go through JSON, as they do between services.
+		JwsAlgorithm parsedAlgorithm = Jwks.toAlgorithm(jwk(objectMapper.writeValueAsString(jwk)));
+
+		assertInstanceOf(expectedType, parsedAlgorithm);
+		assertEquals(algorithm.getKeyId(), parsedAlgorithm.getKeyId());
+		assertFalse(parsedAlgorithm.canSign());
+		assertEquals(jwk, Jwks.toJwk(parsedAlgorithm));
+
+		String token = JWT.create().withSubject("subject").sign(algorithm);
+
+		assertEquals("subject", JWT.require(parsedAlgorithm).build().verify(token).getSubject());
+	}
+
+	private JsonNode jwk(String json) throws JsonProcessingException {
+		return objectMapper.readTree(json);
+	}
+}
@@ -0,0 +1,210 @@
+package com.example.jwtverifier;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.exceptions.JWTVerificationException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class JwksTokenVerifierTests {
+	private static final String ISSUER = "test";
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+	private final AtomicInteger requests = new AtomicInteger();
+
+	// Response of the JWKS endpoint, changed by the tests to rotate keys or fail refreshes.
+	private volatile String jwks = "{\"keys\": []}";
+	private volatile String cacheControl;
+	private volatile int status = 200;
+
+	private HttpServer server;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		server.createContext("/jwks.json", exchange -> {
+			requests.incrementAndGet();
+			byte[] body = jwks.getBytes(StandardCharsets.UTF_8);
+
+			if (cacheControl != null) {
+				exchange.getResponseHeaders().add("Cache-Control", cacheControl);
+			}
+
+			exchange.sendResponseHeaders(status, body.length);
+			exchange.getResponseBody().write(body);
+			exchange.close();
+		});
+		server.start();
+	}
+
+	@AfterEach
+	void tearDown() {
+		server.stop(0);
+	}
+
+	@Test
+	void verifiesTokensSignedWithPublishedKeys() throws Exception {
+		EcdsaAlgorithm ecdsaAlgorithm = TestAlgorithms.ecdsa("ec-key");
+		EdDsaAlgorithm edDsaAlgorithm = TestAlgorithms.edDsa("ed-key");
+		publish(ecdsaAlgorithm, edDsaAlgorithm);
+
+		JwksTokenVerifier verifier = verifier(Duration.ofHours(1));
+
+		assertEquals("subject", verifier.verify(sign(ecdsaAlgorithm)).getSubject());
+		assertEquals("subject", verifier.verify(sign(edDsaAlgorithm)).getSubject());
+		assertEquals(1, requests.get());
+
+		String tokenOfOtherIssuer = JWT.create().withIssuer("other").withSubject("subject").sign(ecdsaAlgorithm);
+		String tokenWithoutKeyId = sign(new HmacAlgorithm(null, "test-secret"));
+
+		assertThrows(JWTVerificationException.class, () -> verifier.verify(tokenOfOtherIssuer));
+		assertThrows(JWTVerificationException.class, () -> verifier.verify(tokenWithoutKeyId));
+	}
+
+	@Test
+	void invalidKeysAreSkipped() throws Exception {
+		EcdsaAlgorithm algorithm = TestAlgorithms.ecdsa("key");
+		EcdsaAlgorithm invalidAlgorithm = TestAlgorithms.ecdsa("invalid-key");
+
+		Map<String, Object> invalidKey = new HashMap<>(Jwks.toJwk(invalidAlgorithm));
+		invalidKey.put("x", "not base64url");
+		jwks = objectMapper.writeValueAsString(Map.of("keys", List.of(invalidKey, Jwks.toJwk(algorithm))));
+
+		JwksTokenVerifier verifier = verifier(Duration.ofHours(1));
+
+		assertEquals("subject", verifier.verify(sign(algorithm)).getSubject());
+		assertThrows(JWTVerificationException.class, () -> verifier.verify(sign(invalidAlgorithm)));
+	}
+
+	@Test
+	void unknownKeyIdRefreshesTheKeys() throws Exception {
+		EcdsaAlgorithm oldAlgorithm = TestAlgorithms.ecdsa("old-key");
+		EcdsaAlgorithm rotatedAlgorithm = TestAlgorithms.ecdsa("rotated-key");
+		cacheControl = "max-age=3600";
+		publish(oldAlgorithm);
+
+		JwksTokenVerifier verifier = verifier(Duration.ofMillis(10));
+		verifier.verify(sign(oldAlgorithm));
+
+		publish(oldAlgorithm, rotatedAlgorithm);
+		Thread.sleep(50);
+
+		assertEquals("subject", verifier.verify(sign(rotatedAlgorithm)).getSubject());
+		assertEquals(2, requests.get());
+	}
+
+	@Test
+	void unknownKeyIdRefreshesAtMostOncePerMinimumInterval() throws Exception {
+		EcdsaAlgorithm algorithm = TestAlgorithms.ecdsa("key");
+		EcdsaAlgorithm unpublishedAlgorithm = TestAlgorithms.ecdsa("unpublished-key");
+		cacheControl = "max-age=3600";
+		publish(algorithm);
+
+		JwksTokenVerifier verifier = verifier(Duration.ofHours(1));
+		verifier.verify(sign(algorithm));
+
+		String token = sign(unpublishedAlgorithm);
+
+		for (int i = 0; i < 10; i++) {
+			assertThrows(JWTVerificationException.class, () -> verifier.verify(token));
+		}
+
+		// Published keys are only seen after the interval, every token before it is rejected without a request.
+		publish(algorithm, unpublishedAlgorithm);
+
+		assertThrows(JWTVerificationException.class, () -> verifier.verify(token));
+		assertEquals(1, requests.get());
+	}
+
+	@Test
+	void keysAreKeptForTheMaxAgeOfTheResponse() throws Exception {
+		EcdsaAlgorithm algorithm = TestAlgorithms.ecdsa("key");
+		cacheControl = "public, max-age=1";
+		publish(algorithm);
+
+		JwksTokenVerifier verifier = verifier(Duration.ofHours(1));
+		String token = sign(algorithm);
+
+		verifier.verify(token);
+		verifier.verify(token);
+		assertEquals(1, requests.get());
+
+		Thread.sleep(1100);
+
+		verifier.verify(token);
+		assertEquals(2, requests.get());
+	}
+
+	@Test
+	void keysWithoutMaxAgeAreKeptForTheDefaultMaxAge() throws Exception {
+		EcdsaAlgorithm algorithm = TestAlgorithms.ecdsa("key");
+		cacheControl = "no-transform";
+		publish(algorithm);
+
+		JwksTokenVerifier verifier = verifier(Duration.ZERO);
+		String token = sign(algorithm);
+
+		for (int i = 0; i < 3; i++) {
+			verifier.verify(token);
+			Thread.sleep(5);
+		}
+
+		assertEquals(1, requests.get());
+	}
+
+	@Test
+	void failedRefreshKeepsThePreviousKeysUntilTheMinimumInterval() throws Exception {
+		EcdsaAlgorithm algorithm = TestAlgorithms.ecdsa("key");
+		cacheControl = "max-age=0";
+		publish(algorithm);
+
+		JwksTokenVerifier verifier = verifier(Duration.ofHours(1));
+		String token = sign(algorithm);
+
+		verifier.verify(token);
+		Thread.sleep(5);
+
+		status = 500;
+
+		verifier.verify(token);
+		verifier.verify(token);
+		assertEquals(2, requests.get());
+	}
+
+	private JwksTokenVerifier verifier(Duration minimumRefreshInterval) {
+		URI jwksUri = URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/jwks.json");
+
+		return new JwksTokenVerifier(jwksUri, ISSUER, HttpClient.newHttpClient(), minimumRefreshInterval);
+	}
+
+	private void publish(JwsAlgorithm... algorithms) throws Exception {
+		List<Map<String, Object>> keys = new ArrayList<>();
+
+		for (JwsAlgorithm algorithm : algorithms) {
+			keys.add(Jwks.toJwk(algorithm));
+		}
+
+		jwks = objectMapper.writeValueAsString(Map.of("keys", keys));
+	}
+
+	private static String sign(JwsAlgorithm algorithm) {
+		return JWT.create().withIssuer(ISSUER).withSubject("subject").sign(algorithm);
+	}
+}
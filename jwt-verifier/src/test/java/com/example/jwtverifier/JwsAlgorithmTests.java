@@ -0,0 +1,113 @@
+package com.example.jwtverifier;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.exceptions.SignatureGenerationException;
+import com.auth0.jwt.exceptions.SignatureVerificationException;
+import com.auth0.jwt.interfaces.DecodedJWT;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.security.AlgorithmParameters;
+import java.security.KeyFactory;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.ECParameterSpec;
+import java.security.spec.ECPublicKeySpec;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JwsAlgorithmTests {
+	@Test
+	void hmacSignsAndVerifiesTokens() {
+		HmacAlgorithm algorithm = new HmacAlgorithm("hmac-key", "test-secret");
+
+		assertRoundTrip(algorithm, "HS256");
+		assertRejectsOtherKey(algorithm, new HmacAlgorithm("hmac-key", "other-secret"));
+	}
+
+	@Test
+	void ecdsaSignsAndVerifiesTokens() throws Exception {
+		EcdsaAlgorithm algorithm = TestAlgorithms.ecdsa("ec-key");
+
+		assertRoundTrip(algorithm, "ES256");
+		assertRejectsOtherKey(algorithm, TestAlgorithms.ecdsa("ec-key"));
+	}
+
+	@Test
+	void edDsaSignsAndVerifiesTokens() throws Exception {
+		EdDsaAlgorithm algorithm = TestAlgorithms.edDsa("ed-key");
+
+		assertRoundTrip(algorithm, "EdDSA");
+		assertRejectsOtherKey(algorithm, TestAlgorithms.edDsa("ed-key"));
+	}
+
+	@Test
+	void verificationOnlyAlgorithmCanNotSign() throws Exception {
+		EcdsaAlgorithm algorithm = TestAlgorithms.ecdsa("ec-key");
+		EcdsaAlgorithm verificationOnlyAlgorithm = new EcdsaAlgorithm("ec-key", algorithm.getPublicKey(), null);
+
+		assertFalse(verificationOnlyAlgorithm.canSign());
+		assertThrows(SignatureGenerationException.class, () -> sign(verificationOnlyAlgorithm));
+
+		JWT.require(verificationOnlyAlgorithm).build().verify(sign(algorithm));
+	}
+
+	@Test
+	void ecdsaKeysOnOtherCurvesAreRejected() throws Exception {
+		// Both curves have the same field size as P-256.
+		for (String curve : new String[] {"secp256k1", "brainpoolP256r1"}) {
+			ECPublicKey publicKey = publicKeyOnCurve(curve);
+
+			assertThrows(IllegalArgumentException.class, () -> new EcdsaAlgorithm("ec-key", publicKey, null));
+		}
+	}
+
+	private static ECPublicKey publicKeyOnCurve(String curve) throws Exception {
+		AlgorithmParameters parameters = AlgorithmParameters.getInstance("EC");
+		parameters.init(new ECGenParameterSpec(curve));
+		ECParameterSpec parameterSpec = parameters.getParameterSpec(ECParameterSpec.class);
+
+		// The generator is a valid public key, keys on these curves can no longer be generated.
+		ECPublicKeySpec keySpec = new ECPublicKeySpec(parameterSpec.getGenerator(), parameterSpec);
+
+		return (ECPublicKey) KeyFactory.getInstance("EC").generatePublic(keySpec);
+	}
+
+	private static void assertRoundTrip(JwsAlgorithm algorithm, String expectedName) {
+		String token = sign(algorithm);
+		DecodedJWT decodedJWT = JWT.require(algorithm).withIssuer("test").build().verify(token);
+
+		assertTrue(algorithm.canSign());
+		assertEquals(expectedName, decodedJWT.getAlgorithm());
+		assertEquals(algorithm.getKeyId(), decodedJWT.getKeyId());
+		assertEquals("subject", decodedJWT.getSubject());
+
+		// The raw byte path, used by parsers which never decode the token, must agree.
+		byte[] content = token.substring(0, token.lastIndexOf('.')).getBytes(StandardCharsets.US_ASCII);
+		byte[] signature = Base64.getUrlDecoder().decode(decodedJWT.getSignature());
+
+		assertTrue(algorithm.verifySignature(content, 0, content.length, signature, 0, signature.length));
+
+		content[content.length - 1] ^= 1;
+		assertFalse(algorithm.verifySignature(content, 0, content.length, signature, 0, signature.length));
+		assertFalse(algorithm.verifySignature(content, 0, content.length, signature, 0, signature.length - 1));
+	}
+
+	private static void assertRejectsOtherKey(JwsAlgorithm algorithm, JwsAlgorithm otherAlgorithm) {
+		String token = sign(otherAlgorithm);
+
+		assertThrows(SignatureVerificationException.class, () -> JWT.require(algorithm).build().verify(token));
+	}
+
+	private static String sign(JwsAlgorithm algorithm) {
+		// The kid header is taken from the algorithm.
+		return JWT.create()
+				.withIssuer("test")
+				.withSubject("subject")
+				.sign(algorithm);
+	}
+}
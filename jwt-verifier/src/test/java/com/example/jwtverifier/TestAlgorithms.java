@@ -0,0 +1,30 @@
+package com.example.jwtverifier;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.ECPrivateKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECGenParameterSpec;
+
+/**
+ * Signing algorithms with freshly generated keys.
+ */
+final class TestAlgorithms {
+	private TestAlgorithms() {
+	}
+
+	static EcdsaAlgorithm ecdsa(String keyId) throws GeneralSecurityException {
+		KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+		generator.initialize(new ECGenParameterSpec("secp256r1"));
+		KeyPair keyPair = generator.generateKeyPair();
+
+		return new EcdsaAlgorithm(keyId, (ECPublicKey) keyPair.getPublic(), (ECPrivateKey) keyPair.getPrivate());
+	}
+
+	static EdDsaAlgorithm edDsa(String keyId) throws GeneralSecurityException {
+		KeyPair keyPair = KeyPairGenerator.getInstance("Ed25519").generateKeyPair();
+
+		return new EdDsaAlgorithm(keyId, keyPair.getPublic(), keyPair.getPrivate());
+	}
+}
@@ -0,0 +1,142 @@
+package com.example.springbootbase.benchmark;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.exceptions.JWTVerificationException;
+import com.example.springbootbase.configuration.JwtKeyProperties;
+import com.example.springbootbase.domain.AppUser;
+import com.example.springbootbase.domain.enumeration.AppUserRole;
+import com.example.springbootbase.utility.JwtUtility;
+import com.example.springbootbase.utility.jwt.TokenValidationResult;
+import com.example.springbootbase.utility.jwt.TokenRevocationStore;
+import com.example.springbootbase.utility.jwt.VerifiedTokenCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares access token validation through the fast path parser with the
+ * general java-jwt path and with the previous implementation,
+ * validateAccessTokenAndRetrieveSubject, which built a verifier for every
+ * token and threw an exception for every rejected one. The verified token
+ * cache is disabled, so every validation parses the token and verifies
+ * its signature. The rejection benchmarks show that invalid tokens cost
+ * no more than valid ones, as no exception is thrown for them. Run with
+ * ./gradlew jmh -PjmhIncludes=AccessTokenParsingBenchmark, and add
+ * -prof gc to the JMH arguments to compare allocation rates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(4)
+public class AccessTokenParsingBenchmark {
+    private static final String ISSUER = "benchmark";
+    private static final String ACCESS_TOKEN_SECRET = "benchmark-access-token-secret";
+    private static final String REFRESH_TOKEN_SECRET = "benchmark-refresh-token-secret";
+
+    private JwtUtility generalPathJwtUtility;
+    private JwtUtility fastPathJwtUtility;
+    private String accessToken;
+    private String expiredAccessToken;
+    private String tamperedAccessToken;
+
+    @Setup
+    public void setup() {
+        generalPathJwtUtility = createJwtUtility(false);
+        fastPathJwtUtility = createJwtUtility(true);
+
+        AppUser appUser = AppUser.builder()
+                .id(1L)
+                .firstName("Bench")
+                .lastName("Mark")
+                .username("benchmark")
+                .email("benchmark@example.com")
+                .role(AppUserRole.ROLE_USER)
+                .build();
+
+        accessToken = fastPathJwtUtility.generateAccessToken(appUser);
+        expiredAccessToken = createJwtUtility(true, -60_000L).generateAccessToken(appUser);
+
+        char lastSignatureCharacter = accessToken.charAt(accessToken.length() - 1);
+        tamperedAccessToken = accessToken.substring(0, accessToken.length() - 1)
+                + (lastSignatureCharacter == 'A' ? 'B' : 'A');
+    }
+
+    @Benchmark
+    public String validateAccessTokenPreviousImplementation() {
+        return validateAccessTokenAndRetrieveSubject(accessToken);
+    }
+
+    @Benchmark
+    public String validateAccessTokenGeneralPath() {
+        return generalPathJwtUtility.validateAccessToken(accessToken).getVerifiedToken().getSubject();
+    }
+
+    @Benchmark
+    public String validateAccessTokenFastPath() {
+        return fastPathJwtUtility.validateAccessToken(accessToken).getVerifiedToken().getSubject();
+    }
+
+    @Benchmark
+    public String rejectExpiredAccessTokenPreviousImplementation() {
+        return validateAccessTokenAndRetrieveSubject(expiredAccessToken);
+    }
+
+    @Benchmark
+    public TokenValidationResult rejectExpiredAccessTokenGeneralPath() {
+        return generalPathJwtUtility.validateAccessToken(expiredAccessToken);
+    }
+
+    @Benchmark
+    public TokenValidationResult rejectExpiredAccessTokenFastPath() {
+        return fastPathJwtUtility.validateAccessToken(expiredAccessToken);
+    }
+
+    @Benchmark
+    public String rejectTamperedAccessTokenPreviousImplementation() {
+        return validateAccessTokenAndRetrieveSubject(tamperedAccessToken);
+    }
+
+    @Benchmark
+    public TokenValidationResult rejectTamperedAccessTokenFastPath() {
+        return fastPathJwtUtility.validateAccessToken(tamperedAccessToken);
+    }
+
+    @Benchmark
+    public TokenValidationResult rejectMalformedAccessToken() {
+        return fastPathJwtUtility.validateAccessToken("not.a-token");
+    }
+
+    // The previous implementation, which the filter caught the exceptions of.
+    private static String validateAccessTokenAndRetrieveSubject(String accessToken) {
+        try {
+            return JWT.require(Algorithm.HMAC256(ACCESS_TOKEN_SECRET))
+                    .withIssuer(ISSUER)
+                    .build()
+                    .verify(accessToken)
+                    .getSubject();
+        } catch (JWTVerificationException exception) {
+            return null;
+        }
+    }
+
+    private static JwtUtility createJwtUtility(boolean fastPathEnabled) {
+        // Long enough for the token generated in setup to outlive the benchmark.
+        return createJwtUtility(fastPathEnabled, 3_600_000L);
+    }
+
+    private static JwtUtility createJwtUtility(boolean fastPathEnabled, long accessTokenExpirationTimeMillis) {
+        return new JwtUtility(
+                ISSUER,
+                ACCESS_TOKEN_SECRET,
+                accessTokenExpirationTimeMillis,
+                REFRESH_TOKEN_SECRET,
+                604_800_000L,
+                new JwtKeyProperties(),
+                fastPathEnabled,
+                new VerifiedTokenCache(false, 0, new SimpleMeterRegistry()),
+                new TokenRevocationStore(1_000, 3_600_000L, 604_800_000L)
+        );
+    }
+}
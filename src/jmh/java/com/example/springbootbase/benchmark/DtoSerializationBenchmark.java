@@ -0,0 +1,125 @@
+package com.example.springbootbase.benchmark;
+
+import com.example.springbootbase.configuration.WebMvcConfiguration;
+import com.example.springbootbase.converter.ProtobufDtoHttpMessageConverter;
+import com.example.springbootbase.domain.enumeration.AppUserRole;
+import com.example.springbootbase.dto.AccessTokenDto;
+import com.example.springbootbase.dto.AppUserDto;
+import com.example.springbootbase.dto.AppUserLoginDto;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.protobuf.ProtobufMapper;
+import com.fasterxml.jackson.dataformat.protobuf.schema.ProtobufSchema;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the cost of encoding the user and token responses as JSON, CBOR
+ * and protobuf, the formats the controllers negotiate. The encoded sizes
+ * are printed in the setup. Tokens are mostly base64 text, which none of
+ * the formats compress, so the user shows the difference best. Run with
+ * ./gradlew jmh -PjmhIncludes=DtoSerializationBenchmark, and add -prof gc
+ * to the JMH arguments to compare allocation rates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class DtoSerializationBenchmark {
+    // Shaped like a real access token, a header, claims and a signature.
+    private static final String ACCESS_TOKEN = "eyJhbGciOiJIUzI1NiIsInR5cCI6IkpXVCJ9."
+            + "eyJzdWIiOiJiZW5jaG1hcmsiLCJyb2xlIjoiUk9MRV9VU0VSIiwiaXNzIjoiYmVuY2htYXJrIiwi"
+            + "aWF0IjoxNzYwNzQ1NjAwLCJleHAiOjE3NjA3NDU2NjB9."
+            + "c2lnbmF0dXJlLW9mLXRoZS1iZW5jaG1hcmstYWNjZXNzLXRva2Vu";
+
+    private static final String REFRESH_TOKEN = "eyJhbGciOiJIUzI1NiIsInR5cCI6IkpXVCJ9."
+            + "eyJzdWIiOiJiZW5jaG1hcmsiLCJpc3MiOiJiZW5jaG1hcmsiLCJpYXQiOjE3NjA3NDU2MDAsImV4cCI6MTc2MTM1MDQwMH0."
+            + "c2lnbmF0dXJlLW9mLXRoZS1iZW5jaG1hcmstcmVmcmVzaC10b2tlbg";
+
+    @Param({"json", "cbor", "protobuf"})
+    private String format;
+
+    private AppUserDto appUserDto;
+    private AppUserLoginDto appUserLoginDto;
+    private AccessTokenDto accessTokenDto;
+
+    private ObjectWriter appUserWriter;
+    private ObjectWriter appUserLoginWriter;
+    private ObjectWriter accessTokenWriter;
+
+    @Setup
+    public void setup() throws IOException {
+        appUserDto = AppUserDto.builder()
+                .id(1_234_567L)
+                .firstName("Bench")
+                .lastName("Mark")
+                .username("benchmark")
+                .email("benchmark@example.com")
+                .role(AppUserRole.ROLE_USER)
+                .version(42L)
+                .build();
+
+        appUserLoginDto = AppUserLoginDto.builder()
+                .accessToken(ACCESS_TOKEN)
+                .refreshToken(REFRESH_TOKEN)
+                .build();
+
+        accessTokenDto = AccessTokenDto.builder()
+                .accessToken(ACCESS_TOKEN)
+                .build();
+
+        switch (format) {
+            case "json" -> {
+                ObjectMapper objectMapper = new ObjectMapper();
+                appUserWriter = objectMapper.writerFor(AppUserDto.class);
+                appUserLoginWriter = objectMapper.writerFor(AppUserLoginDto.class);
+                accessTokenWriter = objectMapper.writerFor(AccessTokenDto.class);
+            }
+            case "cbor" -> {
+                CBORMapper cborMapper = new CBORMapper();
+                appUserWriter = cborMapper.writerFor(AppUserDto.class);
+                appUserLoginWriter = cborMapper.writerFor(AppUserLoginDto.class);
+                accessTokenWriter = cborMapper.writerFor(AccessTokenDto.class);
+            }
+            case "protobuf" -> {
+                ProtobufMapper protobufMapper = new ProtobufMapper();
+                Map<Class<?>, ProtobufSchema> schemasByType = ProtobufDtoHttpMessageConverter.loadSchemas(
+                        new ClassPathResource(WebMvcConfiguration.PROTOBUF_SCHEMA),
+                        WebMvcConfiguration.PROTOBUF_TYPES
+                );
+                appUserWriter = protobufMapper.writer(schemasByType.get(AppUserDto.class));
+                appUserLoginWriter = protobufMapper.writer(schemasByType.get(AppUserLoginDto.class));
+                accessTokenWriter = protobufMapper.writer(schemasByType.get(AccessTokenDto.class));
+            }
+            default -> throw new IllegalArgumentException("Unknown format " + format + ".");
+        }
+
+        System.out.printf(
+                "%n%s sizes in bytes: AppUserDto %d, AppUserLoginDto %d, AccessTokenDto %d%n",
+                format,
+                appUserWriter.writeValueAsBytes(appUserDto).length,
+                appUserLoginWriter.writeValueAsBytes(appUserLoginDto).length,
+                accessTokenWriter.writeValueAsBytes(accessTokenDto).length
+        );
+    }
+
+    @Benchmark
+    public byte[] serializeAppUser() throws JsonProcessingException {
+        return appUserWriter.writeValueAsBytes(appUserDto);
+    }
+
+    @Benchmark
+    public byte[] serializeAppUserLogin() throws JsonProcessingException {
+        return appUserLoginWriter.writeValueAsBytes(appUserLoginDto);
+    }
+
+    @Benchmark
+    public byte[] serializeAccessToken() throws JsonProcessingException {
+        return accessTokenWriter.writeValueAsBytes(accessTokenDto);
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.springbootbase.benchmark;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.algorithms.Algorithm;
+import com.example.springbootbase.domain.AppUser;
+import com.example.springbootbase.domain.enumeration.AppUserRole;
+import com.example.springbootbase.configuration.JwtKeyProperties;
+import com.example.springbootbase.utility.JwtUtility;
+import com.example.springbootbase.utility.jwt.TokenRevocationStore;
+import com.example.springbootbase.utility.jwt.VerifiedToken;
+import com.example.springbootbase.utility.jwt.VerifiedTokenCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares token generation and validation through JwtUtility with the
+ * previous implementation, which built a new Algorithm and JWTVerifier
+ * for every call. The previous implementation signs the same claims as
+ * JwtUtility, so only the handling of the algorithm differs. Run with
+ * ./gradlew jmh -PjmhIncludes=JwtUtilityBenchmark.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(4)
+public class JwtUtilityBenchmark {
+    private static final String ISSUER = "benchmark";
+    private static final String ACCESS_TOKEN_SECRET = "benchmark-access-token-secret";
+    private static final String REFRESH_TOKEN_SECRET = "benchmark-refresh-token-secret";
+    private static final long ACCESS_TOKEN_EXPIRATION_TIME_MILLIS = 60_000L;
+    private static final long REFRESH_TOKEN_EXPIRATION_TIME_MILLIS = 604_800_000L;
+
+    private JwtUtility jwtUtility;
+    private AppUser appUser;
+    private String accessToken;
+    private String refreshToken;
+
+    @Setup
+    public void setup() {
+        jwtUtility = new JwtUtility(
+                ISSUER,
+                ACCESS_TOKEN_SECRET,
+                // Long enough for tokens generated in setup to outlive the benchmark.
+                ACCESS_TOKEN_EXPIRATION_TIME_MILLIS * 60,
+                REFRESH_TOKEN_SECRET,
+                REFRESH_TOKEN_EXPIRATION_TIME_MILLIS,
+                new JwtKeyProperties(),
+                // The fast path is compared separately in AccessTokenParsingBenchmark.
+                false,
+                // Every validation has to verify the signature to be comparable with the previous implementation.
+                new VerifiedTokenCache(false, 0, new SimpleMeterRegistry()),
+                new TokenRevocationStore(1_000, 3_600_000L, 604_800_000L)
+        );
+
+        appUser = AppUser.builder()
+                .id(1L)
+                .firstName("Benchmark")
+                .lastName("User")
+                .username("benchmark")
+                .email("benchmark@example.com")
+                .role(AppUserRole.ROLE_USER)
+                .build();
+
+        accessToken = jwtUtility.generateAccessToken(appUser);
+        refreshToken = jwtUtility.generateRefreshToken(appUser);
+    }
+
+    @Benchmark
+    public String generateAccessToken() {
+        return jwtUtility.generateAccessToken(appUser);
+    }
+
+    @Benchmark
+    public String generateAccessTokenPerCallAlgorithm() {
+        long issuedAtMillis = System.currentTimeMillis();
+
+        return JWT.create()
+                .withIssuer(ISSUER)
+                .withJWTId(UUID.randomUUID().toString())
+                .withIssuedAt(new Date(issuedAtMillis))
+                .withClaim(VerifiedToken.ISSUED_AT_MILLIS_CLAIM, issuedAtMillis)
+                .withSubject(appUser.getUsername())
+                .withExpiresAt(new Date(issuedAtMillis + ACCESS_TOKEN_EXPIRATION_TIME_MILLIS))
+                .withClaim("id", appUser.getId())
+                .withClaim("firstName", appUser.getFirstName())
+                .withClaim("lastName", appUser.getLastName())
+                .withClaim("email", appUser.getEmail())
+                .withClaim("role", appUser.getRole().name())
+                .sign(Algorithm.HMAC256(ACCESS_TOKEN_SECRET));
+    }
+
+    @Benchmark
+    public String generateRefreshToken() {
+        return jwtUtility.generateRefreshToken(appUser);
+    }
+
+    @Benchmark
+    public String generateRefreshTokenPerCallAlgorithm() {
+        long issuedAtMillis = System.currentTimeMillis();
+
+        return JWT.create()
+                .withIssuer(ISSUER)
+                .withJWTId(UUID.randomUUID().toString())
+                .withIssuedAt(new Date(issuedAtMillis))
+                .withClaim(VerifiedToken.ISSUED_AT_MILLIS_CLAIM, issuedAtMillis)
+                .withSubject(appUser.getUsername())
+                .withExpiresAt(new Date(issuedAtMillis + REFRESH_TOKEN_EXPIRATION_TIME_MILLIS))
+                .sign(Algorithm.HMAC256(REFRESH_TOKEN_SECRET));
+    }
+
+    @Benchmark
+    public String validateAccessToken() {
+        return jwtUtility.validateAccessToken(accessToken).getVerifiedToken().getSubject();
+    }
+
+    @Benchmark
+    public String validateAccessTokenPerCallVerifier() {
+        return JWT.require(Algorithm.HMAC256(ACCESS_TOKEN_SECRET))
+                .withIssuer(ISSUER)
+                .build()
+                .verify(accessToken)
+                .getSubject();
+    }
+
+    @Benchmark
+    public String validateRefreshToken() {
+        return jwtUtility.validateRefreshToken(refreshToken).getVerifiedToken().getSubject();
+    }
+
+    @Benchmark
+    public String validateRefreshTokenPerCallVerifier() {
+        return JWT.require(Algorithm.HMAC256(REFRESH_TOKEN_SECRET))
+                .withIssuer(ISSUER)
+                .build()
+                .verify(refreshToken)
+                .getSubject();
+    }
+}
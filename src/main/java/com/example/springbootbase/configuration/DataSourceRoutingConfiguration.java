@@ -0,0 +1,97 @@
+package com.example.springbootbase.configuration;
+
+import com.example.springbootbase.datasource.ReadWriteRoutingDataSource;
+import com.example.springbootbase.datasource.ReplicaLagMonitor;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.orm.jpa.JpaProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Routes read only transactions to read replicas when enabled with
+ * datasource.routing.enabled. Replaces the data source auto configured
+ * from the spring.datasource properties, which then only configure the
+ * primary. Can not be combined with spring.jpa.open-in-view.
+ */
+@Configuration
+@ConditionalOnProperty(name = "datasource.routing.enabled", havingValue = "true")
+@Slf4j
+public class DataSourceRoutingConfiguration {
+    @Bean(destroyMethod = "close")
+    public ReadWriteRoutingDataSource readWriteRoutingDataSource(
+            DataSourceProperties dataSourceProperties,
+            DataSourceRoutingProperties dataSourceRoutingProperties,
+            JpaProperties jpaProperties) {
+
+        /* An entity manager kept open for the whole request keeps the
+         * connection of its first transaction, so a request starting with a
+         * read would run its writes on the read only replica. */
+        if (!Boolean.FALSE.equals(jpaProperties.getOpenInView())) {
+            throw new IllegalStateException("Routing reads to replicas requires spring.jpa.open-in-view to be false.");
+        }
+
+        HikariDataSource primary = dataSourceProperties
+                .initializeDataSourceBuilder()
+                .type(HikariDataSource.class)
+                .build();
+
+        primary.setPoolName("primary");
+
+        List<ReadWriteRoutingDataSource.Replica> replicas = new ArrayList<>();
+
+        for (DataSourceRoutingProperties.Replica replicaProperties : dataSourceRoutingProperties.getReplicas()) {
+            String name = "replica-" + (replicas.size() + 1);
+
+            HikariDataSource replica = DataSourceBuilder.create()
+                    .type(HikariDataSource.class)
+                    .url(replicaProperties.getUrl())
+                    .username(replicaProperties.getUsername())
+                    .password(replicaProperties.getPassword())
+                    .build();
+
+            replica.setPoolName(name);
+            replica.setReadOnly(true);
+            replica.setMaximumPoolSize(replicaProperties.getMaximumPoolSize());
+
+            replicas.add(new ReadWriteRoutingDataSource.Replica(name, replica));
+        }
+
+        log.info("Routing read only transactions to {} replicas.", replicas.size());
+
+        return new ReadWriteRoutingDataSource(primary, replicas);
+    }
+
+    /* Read only transactions are only known to be read only after they
+     * begin, so the connection must not be taken before the first
+     * statement. */
+    @Bean
+    @Primary
+    public DataSource dataSource(ReadWriteRoutingDataSource readWriteRoutingDataSource) {
+        return new LazyConnectionDataSourceProxy(readWriteRoutingDataSource);
+    }
+
+    @Bean
+    public ReplicaLagMonitor replicaLagMonitor(
+            ReadWriteRoutingDataSource readWriteRoutingDataSource,
+            DataSourceRoutingProperties dataSourceRoutingProperties,
+            MeterRegistry meterRegistry) {
+
+        return new ReplicaLagMonitor(
+                readWriteRoutingDataSource.getReplicas(),
+                dataSourceRoutingProperties.getMaxLagMillis(),
+                dataSourceRoutingProperties.getLagQuery(),
+                meterRegistry
+        );
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.springbootbase.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Read replicas which serve read only transactions. The primary is
+ * configured with the spring.datasource properties as usual.
+ */
+@Data
+@ConfigurationProperties(prefix = "datasource.routing")
+public class DataSourceRoutingProperties {
+    private boolean enabled;
+
+    /**
+     * Replicas lagging behind the primary by more than this serve no reads
+     * until they catch up.
+     */
+    private long maxLagMillis;
+
+    private long lagCheckIntervalMillis;
+
+    /**
+     * Query returning the replication lag of a replica in milliseconds.
+     * Replicas are only checked for connectivity when empty.
+     */
+    private String lagQuery;
+
+    private List<Replica> replicas = new ArrayList<>();
+
+    @Data
+    public static class Replica {
+        private String url;
+        private String username;
+        private String password;
+
+        /**
+         * Maximum number of connections to the replica.
+         */
+        private int maximumPoolSize = 10;
+    }
+}
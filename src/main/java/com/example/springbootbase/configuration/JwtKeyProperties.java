@@ -0,0 +1,50 @@
+package com.example.springbootbase.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Access token keys selected by the kid header of a token. Keys stay in the
+ * list after they stop being used for signing, so tokens signed with them
+ * can still be verified until they expire.
+ */
+@Data
+@ConfigurationProperties(prefix = "security.jwt.access-token")
+public class JwtKeyProperties {
+    /**
+     * Id of the key used to sign new access tokens. When empty, tokens are
+     * signed with the access token secret and have no kid header.
+     */
+    private String signingKeyId;
+
+    private List<Key> keys = new ArrayList<>();
+
+    @Data
+    public static class Key {
+        private String id;
+
+        /**
+         * One of HS256, ES256 or EdDSA.
+         */
+        private String algorithm;
+
+        /**
+         * Secret of HS256 keys.
+         */
+        private String secret;
+
+        /**
+         * Base64 encoded PKCS#8 private key of ES256 and EdDSA keys.
+         * Keys without a private key can only verify tokens.
+         */
+        private String privateKey;
+
+        /**
+         * Base64 encoded X.509 public key of ES256 and EdDSA keys.
+         */
+        private String publicKey;
+    }
+}
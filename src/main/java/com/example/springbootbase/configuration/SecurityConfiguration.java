@@ -1,10 +1,13 @@
 package com.example.springbootbase.configuration;
 
 import com.example.springbootbase.filter.JwtFilter;
+import com.example.springbootbase.security.AppUserAuthenticationProvider;
 import com.example.springbootbase.utility.JwtUtility;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.config.annotation.authentication.builders.AuthenticationManagerBuilder;
 import org.springframework.security.config.annotation.method.configuration.EnableGlobalMethodSecurity;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.builders.WebSecurity;
@@ -24,13 +27,28 @@ import org.springframework.security.web.authentication.UsernamePasswordAuthentic
 public class SecurityConfiguration extends WebSecurityConfigurerAdapter {
     private final UserDetailsService userDetailsService;
     private final JwtUtility jwtUtility;
+    private final AppUserAuthenticationProvider appUserAuthenticationProvider;
+    private final boolean statelessAuthentication;
+    private final long statelessMaxStalenessMillis;
 
     public SecurityConfiguration(
             UserDetailsService userDetailsService,
-            JwtUtility jwtUtility) {
+            JwtUtility jwtUtility,
+            AppUserAuthenticationProvider appUserAuthenticationProvider,
+            @Value("${security.jwt.access-token.stateless.enabled}") boolean statelessAuthentication,
+            @Value("${security.jwt.access-token.stateless.max-staleness-millis}") long statelessMaxStalenessMillis) {
 
         this.userDetailsService = userDetailsService;
         this.jwtUtility = jwtUtility;
+        this.appUserAuthenticationProvider = appUserAuthenticationProvider;
+        this.statelessAuthentication = statelessAuthentication;
+        this.statelessMaxStalenessMillis = statelessMaxStalenessMillis;
+    }
+
+    @Override
+    protected void configure(AuthenticationManagerBuilder auth) {
+        // Login is authenticated with a single lookup of the user instead of the default provider.
+        auth.authenticationProvider(appUserAuthenticationProvider);
     }
 
     @Override
@@ -38,7 +56,8 @@ public class SecurityConfiguration extends WebSecurityConfigurerAdapter {
         web.ignoring()
                 .antMatchers("/api/auth/register")
                 .antMatchers("/api/auth/login")
-                .antMatchers("/api/auth/refresh-access-token");
+                .antMatchers("/api/auth/refresh-access-token")
+                .antMatchers("/.well-known/jwks.json");
     }
 
     @Override
@@ -52,10 +71,14 @@ public class SecurityConfiguration extends WebSecurityConfigurerAdapter {
         http.authorizeHttpRequests()
                 .antMatchers("/api/auth/me/**")
                 .authenticated()
+                .antMatchers("/api/auth/logout", "/api/auth/introspect")
+                .authenticated()
                 .antMatchers("/api/auth/**")
                 .permitAll()
                 .antMatchers("/api/**")
-                .authenticated();
+                .authenticated()
+                .antMatchers("/actuator/**")
+                .hasAuthority("ROLE_ADMIN");
 
         /* JwtFilter has to be instantiated manually here and userDetailsService
          * and jwtUtility have to be injected manually as JwtFilter must not
@@ -64,7 +87,12 @@ public class SecurityConfiguration extends WebSecurityConfigurerAdapter {
          * spring security filters. That would cause it to be added twice,
          * once here and once by spring security. */
         http.addFilterBefore(
-                new JwtFilter(userDetailsService, jwtUtility),
+                new JwtFilter(
+                        userDetailsService,
+                        jwtUtility,
+                        statelessAuthentication,
+                        statelessMaxStalenessMillis
+                ),
                 UsernamePasswordAuthenticationFilter.class
         );
     }
@@ -0,0 +1,112 @@
+package com.example.springbootbase.configuration;
+
+import com.example.springbootbase.datasource.ShardResolver;
+import com.example.springbootbase.datasource.ShardRoutingDataSource;
+import com.example.springbootbase.datasource.ShardSchemaIntegrator;
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.jpa.boot.internal.EntityManagerFactoryBuilderImpl;
+import org.hibernate.jpa.boot.spi.IntegratorProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.autoconfigure.orm.jpa.JpaProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Spreads users over several databases when enabled with sharding.enabled.
+ * Replaces the data source auto configured from the spring.datasource
+ * properties, which then only configure the primary shard. Can not be
+ * combined with datasource.routing or spring.jpa.open-in-view.
+ */
+@Configuration
+@ConditionalOnProperty(name = "sharding.enabled", havingValue = "true")
+@Slf4j
+public class ShardingConfiguration {
+    @Bean(destroyMethod = "close")
+    public ShardRoutingDataSource shardRoutingDataSource(
+            DataSourceProperties dataSourceProperties,
+            ShardingProperties shardingProperties,
+            DataSourceRoutingProperties dataSourceRoutingProperties,
+            JpaProperties jpaProperties) {
+
+        if (dataSourceRoutingProperties.isEnabled()) {
+            throw new IllegalStateException("Sharding can not be combined with routing reads to replicas.");
+        }
+
+        /* An entity manager kept open for the whole request keeps the
+         * connection of its first query, which is the directory lookup on the
+         * primary shard, so the users would be looked up there as well. */
+        if (!Boolean.FALSE.equals(jpaProperties.getOpenInView())) {
+            throw new IllegalStateException("Sharding requires spring.jpa.open-in-view to be false.");
+        }
+
+        HikariDataSource primary = dataSourceProperties
+                .initializeDataSourceBuilder()
+                .type(HikariDataSource.class)
+                .build();
+
+        primary.setPoolName("shard-" + ShardRoutingDataSource.PRIMARY_SHARD);
+
+        Map<String, DataSource> dataSourcesByShard = new LinkedHashMap<>();
+        dataSourcesByShard.put(ShardRoutingDataSource.PRIMARY_SHARD, primary);
+
+        for (ShardingProperties.Shard shardProperties : shardingProperties.getShards()) {
+            String name = shardProperties.getName();
+
+            if (name == null || name.isBlank() || dataSourcesByShard.containsKey(name)) {
+                throw new IllegalStateException("Every shard must have a unique name.");
+            }
+
+            HikariDataSource shard = DataSourceBuilder.create()
+                    .type(HikariDataSource.class)
+                    .url(shardProperties.getUrl())
+                    .username(shardProperties.getUsername())
+                    .password(shardProperties.getPassword())
+                    .build();
+
+            shard.setPoolName("shard-" + name);
+            shard.setMaximumPoolSize(shardProperties.getMaximumPoolSize());
+
+            dataSourcesByShard.put(name, shard);
+        }
+
+        log.info("Sharding users over {} shards.", dataSourcesByShard.size());
+
+        return new ShardRoutingDataSource(dataSourcesByShard);
+    }
+
+    /* The shard is only set once the transaction has started, so the
+     * connection must not be taken before the first statement. */
+    @Bean
+    @Primary
+    public DataSource dataSource(ShardRoutingDataSource shardRoutingDataSource) {
+        return new LazyConnectionDataSourceProxy(shardRoutingDataSource);
+    }
+
+    @Bean
+    public ShardResolver shardResolver(ShardRoutingDataSource shardRoutingDataSource) {
+        return new ShardResolver(shardRoutingDataSource.getShards());
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "sharding.generate-schema", havingValue = "true")
+    public HibernatePropertiesCustomizer shardSchemaCustomizer(ShardRoutingDataSource shardRoutingDataSource) {
+        List<Integrator> integrators = List.of(new ShardSchemaIntegrator(shardRoutingDataSource.getShards()));
+
+        return properties -> properties.put(
+                EntityManagerFactoryBuilderImpl.INTEGRATOR_PROVIDER,
+                (IntegratorProvider) () -> integrators
+        );
+    }
+}
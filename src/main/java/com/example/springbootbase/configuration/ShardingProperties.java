@@ -0,0 +1,55 @@
+package com.example.springbootbase.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Shards which users are spread over in addition to the primary shard. The
+ * primary shard is configured with the spring.datasource properties as
+ * usual and also holds the user directory.
+ */
+@Data
+@ConfigurationProperties(prefix = "sharding")
+public class ShardingProperties {
+    private boolean enabled;
+
+    /**
+     * Whether to create the missing tables on the shards other than the
+     * primary at startup.
+     */
+    private boolean generateSchema;
+
+    /**
+     * Whether to move users to the shards they belong to at startup, and to
+     * register users from before sharding was enabled in the directory.
+     */
+    private boolean rebalanceOnStartup;
+
+    /**
+     * Number of users read from a shard at a time while rebalancing.
+     */
+    private int rebalanceBatchSize;
+
+    private List<Shard> shards = new ArrayList<>();
+
+    @Data
+    public static class Shard {
+        /**
+         * Name of the shard, which decides which users it holds. Must not
+         * change once the shard holds users.
+         */
+        private String name;
+
+        private String url;
+        private String username;
+        private String password;
+
+        /**
+         * Maximum number of connections to the shard.
+         */
+        private int maximumPoolSize = 10;
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.springbootbase.configuration;
+
+import com.example.springbootbase.converter.ProtobufDtoHttpMessageConverter;
+import com.example.springbootbase.dto.AccessTokenDto;
+import com.example.springbootbase.dto.AppUserDto;
+import com.example.springbootbase.dto.AppUserLoginDto;
+import com.example.springbootbase.dto.AppUserLookupDto;
+import com.example.springbootbase.dto.AppUserPageDto;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+/**
+ * Serves the user and token responses as CBOR or protobuf to clients asking
+ * for them in the Accept header, which are smaller and cheaper to encode
+ * than JSON. CBOR is written by the converter Spring MVC registers when
+ * jackson-dataformat-cbor is present, and covers every response. Protobuf
+ * covers the DTOs with a message in proto/users.proto. JSON stays the
+ * default, the binary converters come after it and are only chosen when
+ * asked for.
+ */
+@Configuration
+public class WebMvcConfiguration implements WebMvcConfigurer {
+    public static final String PROTOBUF_SCHEMA = "proto/users.proto";
+
+    public static final List<Class<?>> PROTOBUF_TYPES = List.of(
+            AppUserDto.class,
+            AppUserPageDto.class,
+            AppUserLookupDto.class,
+            AppUserLoginDto.class,
+            AccessTokenDto.class
+    );
+
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        try {
+            converters.add(new ProtobufDtoHttpMessageConverter(new ClassPathResource(PROTOBUF_SCHEMA), PROTOBUF_TYPES));
+        } catch (IOException exception) {
+            throw new UncheckedIOException("Could not load the protobuf schema.", exception);
+        }
+    }
+}
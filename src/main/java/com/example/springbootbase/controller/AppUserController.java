@@ -1,45 +1,178 @@
 package com.example.springbootbase.controller;
 
 import com.example.springbootbase.domain.AppUser;
+import com.example.springbootbase.domain.AppUserSummary;
+import com.example.springbootbase.domain.enumeration.AppUserRole;
 import com.example.springbootbase.dto.AppUserDto;
+import com.example.springbootbase.dto.AppUserLookupDto;
+import com.example.springbootbase.dto.AppUserPageDto;
+import com.example.springbootbase.dto.AppUserSearchResultDto;
+import com.example.springbootbase.dto.command.AppUserLookupCommand;
 import com.example.springbootbase.dto.command.AppUserUpdateCommand;
 import com.example.springbootbase.dto.command.AppUserUpdatePasswordCommand;
 import com.example.springbootbase.dto.command.UserUpdateRoleCommand;
 import com.example.springbootbase.exception.ConflictException;
 import com.example.springbootbase.exception.NotFoundException;
+import com.example.springbootbase.exception.PreconditionFailedException;
+import com.example.springbootbase.mapper.AppUserImportMapper;
 import com.example.springbootbase.mapper.AppUserMapper;
+import com.example.springbootbase.service.AppUserImportService;
 import com.example.springbootbase.service.AppUserService;
+import com.example.springbootbase.service.importing.AppUserImportResult;
+import com.example.springbootbase.service.importing.AppUserImportRow;
+import com.example.springbootbase.utility.PasswordHashingExecutor;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
 
 import javax.annotation.security.RolesAllowed;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/api/users")
 public class AppUserController {
+    private static final String NDJSON_CONTENT_TYPE = "application/x-ndjson";
+    private static final String CSV_CONTENT_TYPE = "text/csv";
+    private static final int MAX_PAGE_SIZE = 500;
+    private static final int MAX_SEARCH_LIMIT = 100;
+    // Ids in a query string are bounded by URL length limits, larger batches are posted.
+    private static final int MAX_LOOKUP_QUERY_IDS = 500;
+
     private final AppUserService appUserService;
+    private final AppUserImportService appUserImportService;
     private final AppUserMapper appUserMapper;
+    private final AppUserImportMapper appUserImportMapper;
+    private final ObjectMapper objectMapper;
+    private final PasswordHashingExecutor passwordHashingExecutor;
 
     public AppUserController(
             AppUserService appUserService,
-            AppUserMapper appUserMapper) {
+            AppUserImportService appUserImportService,
+            AppUserMapper appUserMapper,
+            AppUserImportMapper appUserImportMapper,
+            ObjectMapper objectMapper,
+            PasswordHashingExecutor passwordHashingExecutor) {
 
         this.appUserService = appUserService;
+        this.appUserImportService = appUserImportService;
         this.appUserMapper = appUserMapper;
+        this.appUserImportMapper = appUserImportMapper;
+        this.objectMapper = objectMapper;
+        this.passwordHashingExecutor = passwordHashingExecutor;
+    }
+
+    /* Lists users with keyset pagination. The cursor is an opaque token
+     * holding the id of the last user of the previous page, so a page is
+     * found by seeking on the primary key instead of skipping rows. */
+    @GetMapping
+    @RolesAllowed("ROLE_ADMIN")
+    public ResponseEntity<AppUserPageDto> findPage(
+            @RequestParam(required = false) AppUserRole role,
+            @RequestParam(required = false) String namePrefix,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "50") int size) {
+
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            throw new ResponseStatusException(
+                    HttpStatus.BAD_REQUEST,
+                    "Page size must be between 1 and " + MAX_PAGE_SIZE + "."
+            );
+        }
+
+        long afterId = cursor == null || cursor.isEmpty() ? 0L : decodeCursor(cursor);
+
+        // One more user than needed tells if there is a next page without a count query.
+        List<AppUserSummary> appUserSummaries = appUserService.findPage(role, namePrefix, afterId, size + 1);
+        boolean hasNextPage = appUserSummaries.size() > size;
+
+        if (hasNextPage) {
+            appUserSummaries = appUserSummaries.subList(0, size);
+        }
+
+        List<AppUserDto> items = appUserSummaries.stream()
+                .map(appUserMapper::toDto)
+                .toList();
+
+        return ResponseEntity
+                .status(HttpStatus.OK)
+                .body(AppUserPageDto.builder()
+                        .items(items)
+                        .nextCursor(hasNextPage ? encodeCursor(items.get(items.size() - 1).getId()) : null)
+                        .build());
+    }
+
+    @GetMapping("/search")
+    @RolesAllowed("ROLE_ADMIN")
+    public ResponseEntity<List<AppUserSearchResultDto>> search(
+            @RequestParam String q,
+            @RequestParam(defaultValue = "20") int limit) {
+
+        if (limit < 1 || limit > MAX_SEARCH_LIMIT) {
+            throw new ResponseStatusException(
+                    HttpStatus.BAD_REQUEST,
+                    "Search limit must be between 1 and " + MAX_SEARCH_LIMIT + "."
+            );
+        }
+
+        List<AppUserSearchResultDto> results = appUserService.search(q, limit)
+                .stream()
+                .map(appUserMapper::toDto)
+                .toList();
+
+        return ResponseEntity
+                .status(HttpStatus.OK)
+                .body(results);
+    }
+
+    /* Looks up a batch of users by id, for clients resolving lists of ids
+     * which would otherwise look up every user on its own. Ids can be
+     * repeated or separated by commas, up to MAX_LOOKUP_QUERY_IDS of them. */
+    @GetMapping(params = "ids")
+    public ResponseEntity<AppUserLookupDto> findAllByIds(@RequestParam List<Long> ids) {
+        if (ids.size() > MAX_LOOKUP_QUERY_IDS) {
+            throw new ResponseStatusException(
+                    HttpStatus.BAD_REQUEST,
+                    "At most " + MAX_LOOKUP_QUERY_IDS + " ids can be looked up at once, post larger batches."
+            );
+        }
+
+        return lookup(ids);
+    }
+
+    @PostMapping("/lookup")
+    public ResponseEntity<AppUserLookupDto> findAllByIds(
+            @Valid @RequestBody AppUserLookupCommand appUserLookupCommand) {
+
+        return lookup(appUserLookupCommand.getIds());
     }
 
     @GetMapping("/{id}")
     public ResponseEntity<AppUserDto> find(@PathVariable Long id) {
         return appUserService
                 .find(id)
-                .map(user -> ResponseEntity
-                        .status(HttpStatus.OK)
-                        .body(appUserMapper.toDto(user)))
+                .map(this::toResponse)
                 .orElseThrow(() -> new ResponseStatusException(
                         HttpStatus.NOT_FOUND,
                         "User with the id " + id + " could not be found.")
@@ -50,9 +183,7 @@ public class AppUserController {
     public ResponseEntity<AppUserDto> findByUsername(@RequestParam String username) {
         return appUserService
                 .findByUsername(username)
-                .map(user -> ResponseEntity
-                        .status(HttpStatus.OK)
-                        .body(appUserMapper.toDto(user)))
+                .map(this::toResponse)
                 .orElseThrow(() -> new ResponseStatusException(
                         HttpStatus.NOT_FOUND,
                         "User with the username " + username + " could not be found.")
@@ -63,9 +194,7 @@ public class AppUserController {
     public ResponseEntity<AppUserDto> findByEmail(@RequestParam String email) {
         return appUserService
                 .findByEmail(email)
-                .map(user -> ResponseEntity
-                        .status(HttpStatus.OK)
-                        .body(appUserMapper.toDto(user)))
+                .map(this::toResponse)
                 .orElseThrow(() -> new ResponseStatusException(
                         HttpStatus.NOT_FOUND,
                         "User with the email " + email + " could not be found.")
@@ -75,17 +204,17 @@ public class AppUserController {
     @PutMapping("/{username}")
     public ResponseEntity<AppUserDto> update(
             @PathVariable String username,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
             @Valid @RequestBody AppUserUpdateCommand appUserUpdateCommand) {
 
         try {
             AppUser updatedAppUser = appUserService.updateByUsername(
                     username,
-                    appUserMapper.toEntity(appUserUpdateCommand)
+                    appUserMapper.toEntity(appUserUpdateCommand),
+                    parseExpectedVersion(ifMatch)
             );
 
-            return ResponseEntity
-                    .status(HttpStatus.OK)
-                    .body(appUserMapper.toDto(updatedAppUser));
+            return toResponse(updatedAppUser);
         } catch (NotFoundException exception) {
             throw new ResponseStatusException(
                     HttpStatus.NOT_FOUND,
@@ -98,73 +227,153 @@ public class AppUserController {
                     exception.getMessage(),
                     exception
             );
+        } catch (PreconditionFailedException exception) {
+            throw new ResponseStatusException(
+                    HttpStatus.PRECONDITION_FAILED,
+                    exception.getMessage(),
+                    exception
+            );
         }
     }
 
     @PutMapping("/password")
-    public ResponseEntity<AppUserDto> updatePasswordForCurrentUser(
+    public CompletableFuture<ResponseEntity<AppUserDto>> updatePasswordForCurrentUser(
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
             @Valid @RequestBody AppUserUpdatePasswordCommand appUserUpdatePasswordCommand) {
 
-        try {
-            UserDetails currentlySignedInUser = (UserDetails) SecurityContextHolder
-                    .getContext()
-                    .getAuthentication()
-                    .getPrincipal();
-
-            AppUser updatedAppUser = appUserService.updatePasswordByUsername(
-                    currentlySignedInUser.getUsername(),
-                    appUserUpdatePasswordCommand.getPassword()
-            );
+        // The security context is bound to the request thread, so the username is read before going async.
+        String currentlySignedInUsername = SecurityContextHolder
+                .getContext()
+                .getAuthentication()
+                .getName();
 
-            return ResponseEntity
-                    .status(HttpStatus.OK)
-                    .body(appUserMapper.toDto(updatedAppUser));
-        } catch (NotFoundException exception) {
-            throw new ResponseStatusException(
-                    HttpStatus.NOT_FOUND,
-                    exception.getMessage(),
-                    exception
-            );
-        }
+        Long expectedVersion = parseExpectedVersion(ifMatch);
+
+        return passwordHashingExecutor.supplyAsync(() -> updatePasswordByUsername(
+                currentlySignedInUsername,
+                appUserUpdatePasswordCommand.getPassword(),
+                expectedVersion
+        ));
     }
 
     @PutMapping("/{username}/password")
     @RolesAllowed({"ROLE_ADMIN"})
-    public ResponseEntity<AppUserDto> updatePassword(
+    public CompletableFuture<ResponseEntity<AppUserDto>> updatePassword(
             @PathVariable String username,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
             @Valid @RequestBody AppUserUpdatePasswordCommand appUserUpdatePasswordCommand) {
 
-        try {
-            AppUser updatedAppUser = appUserService.updatePasswordByUsername(username, appUserUpdatePasswordCommand.getPassword());
-            return ResponseEntity
-                    .status(HttpStatus.OK)
-                    .body(appUserMapper.toDto(updatedAppUser));
-        } catch (NotFoundException exception) {
-            throw new ResponseStatusException(
-                    HttpStatus.NOT_FOUND,
-                    exception.getMessage(),
-                    exception
-            );
-        }
+        Long expectedVersion = parseExpectedVersion(ifMatch);
+
+        return passwordHashingExecutor.supplyAsync(() -> updatePasswordByUsername(
+                username,
+                appUserUpdatePasswordCommand.getPassword(),
+                expectedVersion
+        ));
     }
 
     @PutMapping("/{username}/role")
     @RolesAllowed({"ROLE_ADMIN"})
     public ResponseEntity<AppUserDto> updateRole(
             @PathVariable String username,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
             @Valid @RequestBody UserUpdateRoleCommand userUpdateRoleCommand) {
 
         try {
-            AppUser updatedAppUser = appUserService.updateRoleByUsername(username, userUpdateRoleCommand.getRole());
-            return ResponseEntity
-                    .status(HttpStatus.OK)
-                    .body(appUserMapper.toDto(updatedAppUser));
+            AppUser updatedAppUser = appUserService.updateRoleByUsername(
+                    username,
+                    userUpdateRoleCommand.getRole(),
+                    parseExpectedVersion(ifMatch)
+            );
+
+            return toResponse(updatedAppUser);
         } catch (NotFoundException exception) {
             throw new ResponseStatusException(
                     HttpStatus.NOT_FOUND,
                     exception.getMessage(),
                     exception
             );
+        } catch (PreconditionFailedException exception) {
+            throw new ResponseStatusException(
+                    HttpStatus.PRECONDITION_FAILED,
+                    exception.getMessage(),
+                    exception
+            );
+        }
+    }
+
+    /* Streams all users as NDJSON, or as CSV if the client accepts it
+     * before NDJSON. Every user is written as soon as it is read, so memory
+     * use does not grow with the number of users. */
+    @GetMapping(value = "/export", produces = {NDJSON_CONTENT_TYPE, CSV_CONTENT_TYPE})
+    @RolesAllowed("ROLE_ADMIN")
+    public void exportUsers(
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            HttpServletResponse response) throws IOException {
+
+        try {
+            if (prefersCsv(accept)) {
+                response.setContentType(CSV_CONTENT_TYPE);
+                response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+
+                Writer writer = new BufferedWriter(
+                        new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8)
+                );
+
+                writer.write("id,firstName,lastName,username,email,role,version\n");
+                appUserService.exportAll(appUser -> writeCsvRecord(writer, appUserMapper.toDto(appUser)));
+                writer.flush();
+            } else {
+                response.setContentType(NDJSON_CONTENT_TYPE);
+
+                try (JsonGenerator generator = objectMapper.getFactory().createGenerator(response.getOutputStream())) {
+                    generator.setRootValueSeparator(null);
+                    appUserService.exportAll(appUser -> writeNdjsonRecord(generator, appUserMapper.toDto(appUser)));
+                }
+            }
+        } catch (UncheckedIOException exception) {
+            throw exception.getCause();
+        }
+    }
+
+    /* Imports users from a file with a JSON object or a CSV record on every
+     * line. The file is read and imported in chunks while the result of
+     * every row is streamed back as a line of JSON, so neither the file nor
+     * the report is held in memory. */
+    @PostMapping(value = "/import", consumes = {NDJSON_CONTENT_TYPE, CSV_CONTENT_TYPE})
+    @RolesAllowed("ROLE_ADMIN")
+    public void importUsers(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Charset charset = request.getCharacterEncoding() != null
+                ? Charset.forName(request.getCharacterEncoding())
+                : StandardCharsets.UTF_8;
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(request.getInputStream(), charset));
+        MediaType contentType = MediaType.parseMediaType(request.getContentType());
+        Iterator<AppUserImportRow> rows;
+
+        if (contentType.isCompatibleWith(MediaType.valueOf(CSV_CONTENT_TYPE))) {
+            try {
+                rows = appUserImportMapper.fromCsv(reader);
+            } catch (IllegalArgumentException exception) {
+                throw new ResponseStatusException(
+                        HttpStatus.BAD_REQUEST,
+                        exception.getMessage(),
+                        exception
+                );
+            }
+        } else {
+            rows = appUserImportMapper.fromNdjson(reader);
+        }
+
+        response.setContentType(NDJSON_CONTENT_TYPE);
+
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(response.getOutputStream())) {
+            // Lines are separated by the newlines written after each result.
+            generator.setRootValueSeparator(null);
+
+            appUserImportService.importUsers(rows, result -> writeImportResult(generator, result));
+        } catch (UncheckedIOException exception) {
+            throw exception.getCause();
         }
     }
 
@@ -184,4 +393,174 @@ public class AppUserController {
             );
         }
     }
+
+    private ResponseEntity<AppUserDto> updatePasswordByUsername(
+            String username,
+            String password,
+            Long expectedVersion) {
+
+        try {
+            AppUser updatedAppUser = appUserService.updatePasswordByUsername(username, password, expectedVersion);
+            return toResponse(updatedAppUser);
+        } catch (NotFoundException exception) {
+            throw new ResponseStatusException(
+                    HttpStatus.NOT_FOUND,
+                    exception.getMessage(),
+                    exception
+            );
+        } catch (PreconditionFailedException exception) {
+            throw new ResponseStatusException(
+                    HttpStatus.PRECONDITION_FAILED,
+                    exception.getMessage(),
+                    exception
+            );
+        }
+    }
+
+    private ResponseEntity<AppUserLookupDto> lookup(List<Long> ids) {
+        return ResponseEntity
+                .status(HttpStatus.OK)
+                .body(appUserMapper.toLookupDto(ids, appUserService.findAllByIds(ids)));
+    }
+
+    private static String encodeCursor(long lastId) {
+        return Base64.getUrlEncoder()
+                .withoutPadding()
+                .encodeToString(ByteBuffer.allocate(Long.BYTES).putLong(lastId).array());
+    }
+
+    private static long decodeCursor(String cursor) {
+        try {
+            byte[] bytes = Base64.getUrlDecoder().decode(cursor);
+
+            if (bytes.length == Long.BYTES) {
+                return ByteBuffer.wrap(bytes).getLong();
+            }
+        } catch (IllegalArgumentException exception) {
+            // Reported below, like a cursor of the wrong length.
+        }
+
+        throw new ResponseStatusException(
+                HttpStatus.BAD_REQUEST,
+                "Cursor is not valid."
+        );
+    }
+
+    private static boolean prefersCsv(String accept) {
+        if (accept == null || accept.isBlank()) {
+            return false;
+        }
+
+        List<MediaType> acceptedMediaTypes = MediaType.parseMediaTypes(accept);
+        MediaType.sortBySpecificityAndQuality(acceptedMediaTypes);
+
+        for (MediaType acceptedMediaType : acceptedMediaTypes) {
+            if (acceptedMediaType.includes(MediaType.valueOf(NDJSON_CONTENT_TYPE))) {
+                return false;
+            }
+
+            if (acceptedMediaType.includes(MediaType.valueOf(CSV_CONTENT_TYPE))) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static void writeNdjsonRecord(JsonGenerator generator, AppUserDto appUserDto) {
+        try {
+            generator.writeObject(appUserDto);
+            generator.writeRaw('\n');
+        } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+    }
+
+    private static void writeCsvRecord(Writer writer, AppUserDto appUserDto) {
+        try {
+            writer.write(String.join(",",
+                    String.valueOf(appUserDto.getId()),
+                    csvField(appUserDto.getFirstName()),
+                    csvField(appUserDto.getLastName()),
+                    csvField(appUserDto.getUsername()),
+                    csvField(appUserDto.getEmail()),
+                    appUserDto.getRole() == null ? "" : appUserDto.getRole().name(),
+                    appUserDto.getVersion() == null ? "" : String.valueOf(appUserDto.getVersion())
+            ));
+            writer.write('\n');
+        } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+    }
+
+    // Quotes fields containing separators, quotes or line breaks, doubling the quotes inside.
+    private static String csvField(String value) {
+        if (value == null) {
+            return "";
+        }
+
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    private static void writeImportResult(JsonGenerator generator, AppUserImportResult result) {
+        try {
+            generator.writeStartObject();
+            generator.writeNumberField("line", result.getLine());
+            generator.writeStringField("status", result.getStatus().name());
+
+            if (result.getId() != null) {
+                generator.writeNumberField("id", result.getId());
+            }
+
+            if (result.getMessage() != null) {
+                generator.writeStringField("message", result.getMessage());
+            }
+
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+        } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+    }
+
+    /* The version of the user is sent as the ETag, so clients can make
+     * their updates conditional with the If-Match header. */
+    private ResponseEntity<AppUserDto> toResponse(AppUser appUser) {
+        return ResponseEntity
+                .status(HttpStatus.OK)
+                .eTag(String.valueOf(appUser.getVersion()))
+                .body(appUserMapper.toDto(appUser));
+    }
+
+    /* Returns the version from the If-Match header, or null if the header
+     * is missing or matches any version. */
+    private static Long parseExpectedVersion(String ifMatch) {
+        if (ifMatch == null || ifMatch.isBlank() || ifMatch.trim().equals("*")) {
+            return null;
+        }
+
+        String entityTag = ifMatch.trim();
+
+        if (entityTag.startsWith("W/")) {
+            entityTag = entityTag.substring(2);
+        }
+
+        if (entityTag.length() >= 2 && entityTag.startsWith("\"") && entityTag.endsWith("\"")) {
+            entityTag = entityTag.substring(1, entityTag.length() - 1);
+        }
+
+        try {
+            return Long.valueOf(entityTag);
+        } catch (NumberFormatException exception) {
+            throw new ResponseStatusException(
+                    HttpStatus.PRECONDITION_FAILED,
+                    "If-Match header does not contain a version of the user.",
+                    exception
+            );
+        }
+    }
 }
@@ -1,8 +1,5 @@
 package com.example.springbootbase.controller;
 
-import com.auth0.jwt.exceptions.JWTVerificationException;
-import com.auth0.jwt.exceptions.SignatureVerificationException;
-import com.auth0.jwt.exceptions.TokenExpiredException;
 import com.example.springbootbase.domain.AppUser;
 import com.example.springbootbase.dto.AccessTokenDto;
 import com.example.springbootbase.dto.AppUserDto;
@@ -15,77 +12,104 @@ import com.example.springbootbase.exception.NotFoundException;
 import com.example.springbootbase.mapper.AppUserMapper;
 import com.example.springbootbase.service.AppUserService;
 import com.example.springbootbase.service.AuthService;
+import com.example.springbootbase.utility.PasswordHashingExecutor;
+import com.example.springbootbase.utility.jwt.TokenValidationResult;
+import com.example.springbootbase.utility.jwt.VerifiedToken;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.AuthenticationException;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
 
+import javax.annotation.security.RolesAllowed;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
+import java.io.IOException;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/api/auth")
 public class AuthController {
+    private static final String NDJSON_CONTENT_TYPE = "application/x-ndjson";
+
     private final AuthService authService;
     private final AppUserService appUserService;
     private final AppUserMapper appUserMapper;
+    private final ObjectMapper objectMapper;
+    private final PasswordHashingExecutor passwordHashingExecutor;
 
     public AuthController(
             AuthService authService,
             AppUserService appUserService,
-            AppUserMapper appUserMapper) {
+            AppUserMapper appUserMapper,
+            ObjectMapper objectMapper,
+            PasswordHashingExecutor passwordHashingExecutor) {
 
         this.authService = authService;
         this.appUserService = appUserService;
         this.appUserMapper = appUserMapper;
+        this.objectMapper = objectMapper;
+        this.passwordHashingExecutor = passwordHashingExecutor;
     }
 
     @PostMapping("/register")
-    public ResponseEntity<AppUserDto> register(@Valid @RequestBody AppUserRegistrationCommand appUserRegistrationCommand) {
-        try {
-            AppUser savedAppUser = appUserService.save(appUserMapper.toEntity(appUserRegistrationCommand));
-            return ResponseEntity
-                    .status(HttpStatus.CREATED)
-                    .body(appUserMapper.toDto(savedAppUser));
-        } catch (ConflictException exception) {
-            throw new ResponseStatusException(
-                    HttpStatus.CONFLICT,
-                    exception.getMessage(),
-                    exception
-            );
-        }
+    public CompletableFuture<ResponseEntity<AppUserDto>> register(
+            @Valid @RequestBody AppUserRegistrationCommand appUserRegistrationCommand) {
+
+        // Hashing the password runs on the password hashing pool instead of the request thread.
+        return passwordHashingExecutor.supplyAsync(() -> {
+            try {
+                AppUser savedAppUser = appUserService.save(appUserMapper.toEntity(appUserRegistrationCommand));
+                return ResponseEntity
+                        .status(HttpStatus.CREATED)
+                        .body(appUserMapper.toDto(savedAppUser));
+            } catch (ConflictException exception) {
+                throw new ResponseStatusException(
+                        HttpStatus.CONFLICT,
+                        exception.getMessage(),
+                        exception
+                );
+            }
+        });
     }
 
     @PostMapping("/login")
-    public ResponseEntity<AppUserLoginDto> login(@Valid @RequestBody AppUserLoginCommand appUserLoginCommand) {
-        try {
-            Map<String, String> tokens = authService.login(
-                    appUserLoginCommand.getUsername(),
-                    appUserLoginCommand.getPassword()
-            );
+    public CompletableFuture<ResponseEntity<AppUserLoginDto>> login(
+            @Valid @RequestBody AppUserLoginCommand appUserLoginCommand) {
 
-            AppUserLoginDto appUserLoginDto = AppUserLoginDto.builder()
-                    .accessToken(tokens.get("access-token"))
-                    .refreshToken(tokens.get("refresh-token"))
-                    .build();
+        // Verifying the password runs on the password hashing pool instead of the request thread.
+        return passwordHashingExecutor.supplyAsync(() -> {
+            try {
+                Map<String, String> tokens = authService.login(
+                        appUserLoginCommand.getUsername(),
+                        appUserLoginCommand.getPassword()
+                );
 
-            return ResponseEntity
-                    .status(HttpStatus.OK)
-                    .body(appUserLoginDto);
-        } catch (NotFoundException exception) {
-            throw new ResponseStatusException(
-                    HttpStatus.NOT_FOUND,
-                    exception.getMessage(),
-                    exception
-            );
-        } catch (AuthenticationException exception) {
-            throw new ResponseStatusException(
-                    HttpStatus.BAD_REQUEST,
-                    "Username or password incorrect.",
-                    exception
-            );
-        }
+                AppUserLoginDto appUserLoginDto = AppUserLoginDto.builder()
+                        .accessToken(tokens.get("access-token"))
+                        .refreshToken(tokens.get("refresh-token"))
+                        .build();
+
+                return ResponseEntity
+                        .status(HttpStatus.OK)
+                        .body(appUserLoginDto);
+            } catch (AuthenticationException exception) {
+                throw new ResponseStatusException(
+                        HttpStatus.BAD_REQUEST,
+                        "Username or password incorrect.",
+                        exception
+                );
+            }
+        });
     }
 
     @GetMapping("/me")
@@ -103,35 +127,121 @@ public class AuthController {
 
     @GetMapping("/refresh-access-token")
     public ResponseEntity<AccessTokenDto> refreshAccessToken(@Valid @RequestBody RefreshTokenCommand refreshTokenCommand) {
+        TokenValidationResult validationResult = authService.validateRefreshToken(
+                refreshTokenCommand.getRefreshToken()
+        );
+
+        if (!validationResult.isValid()) {
+            throw new ResponseStatusException(
+                    HttpStatus.UNAUTHORIZED,
+                    refreshTokenRejectionMessage(validationResult.getReason())
+            );
+        }
+
         try {
-            String accessToken = authService.refreshAccessToken(refreshTokenCommand.getRefreshToken());
+            String accessToken = authService.refreshAccessToken(validationResult.getVerifiedToken());
             return ResponseEntity
                     .status(HttpStatus.OK)
                     .body(new AccessTokenDto(accessToken));
-        } catch (SignatureVerificationException exception) {
-            throw new ResponseStatusException(
-                    HttpStatus.UNAUTHORIZED,
-                    "Could not verify access token signature.",
-                    exception
-            );
-        } catch (TokenExpiredException exception) {
-            throw new ResponseStatusException(
-                    HttpStatus.UNAUTHORIZED,
-                    "Access token has timed out.",
-                    exception
-            );
-        } catch (JWTVerificationException exception) {
+        } catch (NotFoundException exception) {
             throw new ResponseStatusException(
                     HttpStatus.UNAUTHORIZED,
-                    "Access token is not valid.",
+                    exception.getMessage(),
                     exception
             );
-        } catch (NotFoundException exception) {
+        }
+    }
+
+    @PostMapping("/logout")
+    public ResponseEntity<Void> logout(@RequestBody(required = false) RefreshTokenCommand refreshTokenCommand) {
+        authService.logout(refreshTokenCommand == null ? null : refreshTokenCommand.getRefreshToken());
+        return ResponseEntity
+                .status(HttpStatus.NO_CONTENT)
+                .build();
+    }
+
+    /**
+     * Validates a JSON array of access tokens and streams one NDJSON line
+     * per token back, in the order of the request. Tokens are read and
+     * answered one at a time, so the size of the batch does not affect
+     * memory use. Only the claims of the tokens are used, the database is
+     * never queried.
+     */
+    @PostMapping(value = "/introspect", consumes = MediaType.APPLICATION_JSON_VALUE)
+    @RolesAllowed("ROLE_ADMIN")
+    public void introspect(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        try (JsonParser parser = objectMapper.getFactory().createParser(request.getInputStream())) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new ResponseStatusException(
+                        HttpStatus.BAD_REQUEST,
+                        "Request body must be a JSON array of access tokens."
+                );
+            }
+
+            response.setContentType(NDJSON_CONTENT_TYPE);
+
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(response.getOutputStream())) {
+                // Lines are separated by the newlines written after each result.
+                generator.setRootValueSeparator(null);
+
+                for (JsonToken token = parser.nextToken(); token != JsonToken.END_ARRAY; token = parser.nextToken()) {
+                    if (token == null) {
+                        throw new JsonParseException(parser, "Unexpected end of the access token array.");
+                    }
+
+                    TokenValidationResult validationResult;
+
+                    if (token == JsonToken.VALUE_STRING) {
+                        validationResult = authService.validateAccessToken(parser.getText());
+                    } else {
+                        parser.skipChildren();
+                        validationResult = TokenValidationResult.rejected(TokenValidationResult.Reason.MALFORMED);
+                    }
+
+                    writeIntrospection(generator, validationResult);
+                }
+            }
+        } catch (JsonProcessingException exception) {
+            // Results written before the error are already on their way to the client.
             throw new ResponseStatusException(
-                    HttpStatus.UNAUTHORIZED,
-                    exception.getMessage(),
+                    HttpStatus.BAD_REQUEST,
+                    "Request body is not a valid JSON array of access tokens.",
                     exception
             );
         }
     }
+
+    private static void writeIntrospection(
+            JsonGenerator generator,
+            TokenValidationResult validationResult) throws IOException {
+
+        generator.writeStartObject();
+        generator.writeBooleanField("active", validationResult.isValid());
+
+        if (validationResult.isValid()) {
+            VerifiedToken verifiedToken = validationResult.getVerifiedToken();
+
+            generator.writeStringField("sub", verifiedToken.getSubject());
+
+            if (verifiedToken.getRole() != null) {
+                generator.writeStringField("role", verifiedToken.getRole());
+            }
+
+            generator.writeNumberField("exp", verifiedToken.getExpiresAt().getEpochSecond());
+        } else {
+            generator.writeStringField("reason", validationResult.getReason().name());
+        }
+
+        generator.writeEndObject();
+        generator.writeRaw('\n');
+    }
+
+    private static String refreshTokenRejectionMessage(TokenValidationResult.Reason reason) {
+        return switch (reason) {
+            case BAD_SIGNATURE -> "Could not verify refresh token signature.";
+            case EXPIRED -> "Refresh token has timed out.";
+            case REVOKED -> "Refresh token has been revoked.";
+            default -> "Refresh token is not valid.";
+        };
+    }
 }
@@ -0,0 +1,35 @@
+package com.example.springbootbase.controller;
+
+import com.example.springbootbase.utility.JwtUtility;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@RestController
+public class JwksController {
+    private final JwtUtility jwtUtility;
+    private final long maxAgeSeconds;
+
+    public JwksController(
+            JwtUtility jwtUtility,
+            @Value("${security.jwt.jwks.max-age-seconds}") long maxAgeSeconds) {
+
+        this.jwtUtility = jwtUtility;
+        this.maxAgeSeconds = maxAgeSeconds;
+    }
+
+    @GetMapping(path = "/.well-known/jwks.json", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Map<String, Object>> getJwks() {
+        return ResponseEntity
+                .status(HttpStatus.OK)
+                .cacheControl(CacheControl.maxAge(maxAgeSeconds, TimeUnit.SECONDS).cachePublic())
+                .body(jwtUtility.getPublicJwks());
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.springbootbase.converter;
+
+import com.fasterxml.jackson.dataformat.protobuf.ProtobufMapper;
+import com.fasterxml.jackson.dataformat.protobuf.schema.NativeProtobufSchema;
+import com.fasterxml.jackson.dataformat.protobuf.schema.ProtobufSchema;
+import com.fasterxml.jackson.dataformat.protobuf.schema.ProtobufSchemaLoader;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads and writes the DTOs which have a message of the same name in the
+ * protobuf schema, as application/x-protobuf. The DTOs are encoded by
+ * Jackson with the checked in schema, so they need no generated classes,
+ * and clients generate theirs from the same schema. Other types are left
+ * to the other converters.
+ */
+public class ProtobufDtoHttpMessageConverter extends AbstractHttpMessageConverter<Object> {
+    public static final MediaType APPLICATION_PROTOBUF = new MediaType("application", "x-protobuf");
+
+    private final ProtobufMapper protobufMapper = new ProtobufMapper();
+    private final Map<Class<?>, ProtobufSchema> schemasByType;
+
+    public ProtobufDtoHttpMessageConverter(Resource schema, Collection<Class<?>> types) throws IOException {
+        super(APPLICATION_PROTOBUF);
+        this.schemasByType = loadSchemas(schema, types);
+    }
+
+    /**
+     * Returns the schema of every type, the message named after the simple
+     * name of the type. Throws IllegalArgumentException if a type has no
+     * message in the schema.
+     */
+    public static Map<Class<?>, ProtobufSchema> loadSchemas(Resource schema, Collection<Class<?>> types)
+            throws IOException {
+
+        NativeProtobufSchema nativeSchema;
+
+        try (InputStream inputStream = schema.getInputStream()) {
+            nativeSchema = ProtobufSchemaLoader.std.parseNative(
+                    new String(inputStream.readAllBytes(), StandardCharsets.UTF_8)
+            );
+        }
+
+        Map<Class<?>, ProtobufSchema> schemasByType = new HashMap<>();
+
+        for (Class<?> type : types) {
+            schemasByType.put(type, nativeSchema.forType(type.getSimpleName()));
+        }
+
+        return schemasByType;
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return schemasByType.containsKey(clazz);
+    }
+
+    @Override
+    protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage) throws IOException {
+        try {
+            return protobufMapper.readerFor(clazz).with(schemasByType.get(clazz)).readValue(inputMessage.getBody());
+        } catch (IOException exception) {
+            throw new HttpMessageNotReadableException("Could not read protobuf message.", exception, inputMessage);
+        }
+    }
+
+    @Override
+    protected void writeInternal(Object object, HttpOutputMessage outputMessage) throws IOException {
+        try {
+            protobufMapper.writer(schemasByType.get(object.getClass())).writeValue(outputMessage.getBody(), object);
+        } catch (IOException exception) {
+            throw new HttpMessageNotWritableException("Could not write protobuf message.", exception);
+        }
+    }
+}
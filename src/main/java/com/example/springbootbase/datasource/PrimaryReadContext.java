@@ -0,0 +1,45 @@
+package com.example.springbootbase.datasource;
+
+/**
+ * Marks reads on the current thread which the ReadWriteRoutingDataSource
+ * sends to the primary even in read only transactions. Used for reads
+ * whose results are cached, since a replica lagging behind a change would
+ * put the row from before the change back into the cache the change was
+ * just evicted from. Must be set before the transaction takes its
+ * connection.
+ */
+public final class PrimaryReadContext {
+    private static final ThreadLocal<Boolean> PRIMARY_READS = new ThreadLocal<>();
+
+    private PrimaryReadContext() {
+    }
+
+    /**
+     * Sends the reads of the current thread to the primary until the
+     * returned scope is closed.
+     */
+    public static Scope use() {
+        boolean previouslyActive = isActive();
+        PRIMARY_READS.set(Boolean.TRUE);
+        return new Scope(previouslyActive);
+    }
+
+    public static boolean isActive() {
+        return PRIMARY_READS.get() != null;
+    }
+
+    public static final class Scope implements AutoCloseable {
+        private final boolean previouslyActive;
+
+        private Scope(boolean previouslyActive) {
+            this.previouslyActive = previouslyActive;
+        }
+
+        @Override
+        public void close() {
+            if (!previouslyActive) {
+                PRIMARY_READS.remove();
+            }
+        }
+    }
+}
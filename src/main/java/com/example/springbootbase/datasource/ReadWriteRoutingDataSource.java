@@ -0,0 +1,126 @@
+package com.example.springbootbase.datasource;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends connections of read only transactions to the available replicas in
+ * turn, and everything else to the primary. Reads fall back to the primary
+ * when no replica is available, and stay on it inside a
+ * PrimaryReadContext. The transaction has to be known when the
+ * connection is taken, so this data source must be wrapped in a
+ * LazyConnectionDataSourceProxy.
+ */
+@Slf4j
+public class ReadWriteRoutingDataSource extends AbstractRoutingDataSource implements Closeable {
+    private static final String PRIMARY = "primary";
+
+    private final DataSource primary;
+    private final List<Replica> replicas;
+    private final AtomicInteger nextReplica = new AtomicInteger();
+
+    public ReadWriteRoutingDataSource(DataSource primary, List<Replica> replicas) {
+        this.primary = primary;
+        this.replicas = List.copyOf(replicas);
+
+        Map<Object, Object> targetDataSources = new HashMap<>();
+        targetDataSources.put(PRIMARY, primary);
+
+        for (Replica replica : replicas) {
+            targetDataSources.put(replica.getName(), replica.getDataSource());
+        }
+
+        setTargetDataSources(targetDataSources);
+        setDefaultTargetDataSource(primary);
+    }
+
+    public List<Replica> getReplicas() {
+        return replicas;
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (replicas.isEmpty()
+                || !TransactionSynchronizationManager.isCurrentTransactionReadOnly()
+                || PrimaryReadContext.isActive()) {
+            return PRIMARY;
+        }
+
+        int start = Math.floorMod(nextReplica.getAndIncrement(), replicas.size());
+
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica replica = replicas.get((start + i) % replicas.size());
+
+            if (replica.isAvailable()) {
+                return replica.getName();
+            }
+        }
+
+        return PRIMARY;
+    }
+
+    @Override
+    public void close() {
+        closeIfPossible(primary);
+
+        for (Replica replica : replicas) {
+            closeIfPossible(replica.getDataSource());
+        }
+    }
+
+    private static void closeIfPossible(DataSource dataSource) {
+        if (dataSource instanceof Closeable closeable) {
+            try {
+                closeable.close();
+            } catch (Exception exception) {
+                log.warn("Could not close data source.", exception);
+            }
+        }
+    }
+
+    /**
+     * A replica with its availability, which is updated by the
+     * ReplicaLagMonitor. Replicas are unavailable until first checked.
+     */
+    public static class Replica {
+        private final String name;
+        private final DataSource dataSource;
+        private volatile boolean available;
+        private volatile long lagMillis = -1;
+
+        public Replica(String name, DataSource dataSource) {
+            this.name = name;
+            this.dataSource = dataSource;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public DataSource getDataSource() {
+            return dataSource;
+        }
+
+        public boolean isAvailable() {
+            return available;
+        }
+
+        // Lag measured by the last check, or -1 if the replica could not be checked.
+        public long getLagMillis() {
+            return lagMillis;
+        }
+
+        void update(boolean available, long lagMillis) {
+            this.available = available;
+            this.lagMillis = lagMillis;
+        }
+    }
+}
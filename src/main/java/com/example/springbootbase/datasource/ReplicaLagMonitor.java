@@ -0,0 +1,95 @@
+package com.example.springbootbase.datasource;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+/**
+ * Checks the replicas periodically and takes the ones which can not be
+ * reached, or lag behind the primary by more than the tolerance, out of
+ * the rotation until they recover. The lag of every replica is published
+ * as the datasource.replica.lag gauge.
+ */
+@Slf4j
+public class ReplicaLagMonitor {
+    private static final int VALIDATION_TIMEOUT_SECONDS = 5;
+
+    private final List<ReadWriteRoutingDataSource.Replica> replicas;
+    private final long maxLagMillis;
+    private final String lagQuery;
+
+    public ReplicaLagMonitor(
+            List<ReadWriteRoutingDataSource.Replica> replicas,
+            long maxLagMillis,
+            String lagQuery,
+            MeterRegistry meterRegistry) {
+
+        this.replicas = replicas;
+        this.maxLagMillis = maxLagMillis;
+        this.lagQuery = lagQuery == null || lagQuery.isBlank() ? null : lagQuery;
+
+        for (ReadWriteRoutingDataSource.Replica replica : replicas) {
+            Gauge.builder("datasource.replica.lag", replica, ReadWriteRoutingDataSource.Replica::getLagMillis)
+                    .description("Replication lag of the replica in milliseconds, -1 if it could not be checked")
+                    .tag("replica", replica.getName())
+                    .baseUnit("milliseconds")
+                    .register(meterRegistry);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${datasource.routing.lag-check-interval-millis}")
+    public void check() {
+        for (ReadWriteRoutingDataSource.Replica replica : replicas) {
+            boolean wasAvailable = replica.isAvailable();
+
+            try {
+                long lagMillis = measureLag(replica);
+                replica.update(lagMillis <= maxLagMillis, lagMillis);
+            } catch (SQLException exception) {
+                replica.update(false, -1);
+
+                if (wasAvailable) {
+                    log.warn("Replica {} could not be checked.", replica.getName(), exception);
+                }
+            }
+
+            if (wasAvailable != replica.isAvailable()) {
+                log.info(
+                        "Replica {} is {} with a lag of {} ms.",
+                        replica.getName(),
+                        replica.isAvailable() ? "available" : "unavailable",
+                        replica.getLagMillis()
+                );
+            }
+        }
+    }
+
+    private long measureLag(ReadWriteRoutingDataSource.Replica replica) throws SQLException {
+        try (Connection connection = replica.getDataSource().getConnection()) {
+            if (lagQuery == null) {
+                if (!connection.isValid(VALIDATION_TIMEOUT_SECONDS)) {
+                    throw new SQLException("Connection to the replica is not valid.");
+                }
+
+                return 0;
+            }
+
+            try (Statement statement = connection.createStatement();
+                 ResultSet resultSet = statement.executeQuery(lagQuery)) {
+
+                if (!resultSet.next()) {
+                    throw new SQLException("Replication lag query returned no rows.");
+                }
+
+                return resultSet.getLong(1);
+            }
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.springbootbase.datasource;
+
+/**
+ * Holds the shard the current thread works on, which the
+ * ShardRoutingDataSource takes connections from. Threads without a shard
+ * use the primary shard. The shard must be set before the transaction
+ * takes its connection, and a transaction stays on the shard it started
+ * on.
+ */
+public final class ShardContext {
+    private static final ThreadLocal<String> CURRENT_SHARD = new ThreadLocal<>();
+
+    private ShardContext() {
+    }
+
+    /**
+     * Switches the current thread to the shard until the returned scope is
+     * closed, which restores the previous shard.
+     */
+    public static Scope use(String shard) {
+        String previousShard = CURRENT_SHARD.get();
+        CURRENT_SHARD.set(shard);
+        return new Scope(previousShard);
+    }
+
+    // Null if the thread uses the primary shard.
+    public static String current() {
+        return CURRENT_SHARD.get();
+    }
+
+    public static final class Scope implements AutoCloseable {
+        private final String previousShard;
+
+        private Scope(String previousShard) {
+            this.previousShard = previousShard;
+        }
+
+        @Override
+        public void close() {
+            if (previousShard == null) {
+                CURRENT_SHARD.remove();
+            } else {
+                CURRENT_SHARD.set(previousShard);
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.springbootbase.datasource;
+
+import java.util.List;
+
+/**
+ * Assigns users to shards by rendezvous hashing of the normalized username.
+ * Every shard gets a weight derived from its name and the username, and the
+ * user belongs to the shard with the highest weight. Adding a shard only
+ * moves the users which the new shard wins, about 1 / N of them, instead of
+ * almost all users as with a hash modulo the number of shards. Weights only
+ * depend on names, so every instance assigns users the same way whatever
+ * the order of the shards in the configuration.
+ */
+public class ShardResolver {
+    private final List<String> shards;
+    private final long[] shardHashes;
+
+    public ShardResolver(List<String> shards) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("There must be at least one shard.");
+        }
+
+        this.shards = List.copyOf(shards);
+        this.shardHashes = new long[shards.size()];
+
+        for (int i = 0; i < shards.size(); i++) {
+            shardHashes[i] = hash(shards.get(i));
+        }
+    }
+
+    public String shardOf(String normalizedUsername) {
+        long usernameHash = hash(normalizedUsername);
+        int bestShard = 0;
+        long bestWeight = Long.MIN_VALUE;
+
+        for (int i = 0; i < shards.size(); i++) {
+            long weight = mix(shardHashes[i] ^ usernameHash);
+
+            if (weight > bestWeight || (weight == bestWeight && shards.get(i).compareTo(shards.get(bestShard)) < 0)) {
+                bestShard = i;
+                bestWeight = weight;
+            }
+        }
+
+        return shards.get(bestShard);
+    }
+
+    // 64 bit FNV-1a over the characters of the value.
+    private static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+
+        return hash;
+    }
+
+    // Finalizer of MurmurHash3, so weights of different shards are not correlated.
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.springbootbase.datasource;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sends connections to the shard set in the ShardContext, or to the primary
+ * shard if none is set. The primary shard is the database configured with
+ * the spring.datasource properties, which also holds the user directory.
+ * The shard has to be known when the connection is taken, so this data
+ * source must be wrapped in a LazyConnectionDataSourceProxy.
+ */
+@Slf4j
+public class ShardRoutingDataSource extends AbstractRoutingDataSource implements Closeable {
+    public static final String PRIMARY_SHARD = "primary";
+
+    private final Map<String, DataSource> dataSourcesByShard;
+
+    public ShardRoutingDataSource(Map<String, DataSource> dataSourcesByShard) {
+        this.dataSourcesByShard = new LinkedHashMap<>(dataSourcesByShard);
+
+        if (!this.dataSourcesByShard.containsKey(PRIMARY_SHARD)) {
+            throw new IllegalArgumentException("Shards must include the primary shard.");
+        }
+
+        setTargetDataSources(new HashMap<>(this.dataSourcesByShard));
+        setDefaultTargetDataSource(this.dataSourcesByShard.get(PRIMARY_SHARD));
+
+        // An unknown shard is an error rather than a silent read of the primary.
+        setLenientFallback(false);
+    }
+
+    // Names of all shards, the primary shard first.
+    public List<String> getShards() {
+        return List.copyOf(dataSourcesByShard.keySet());
+    }
+
+    // Data source of the shard itself, for work which does not go through JPA.
+    public DataSource getShardDataSource(String shard) {
+        DataSource dataSource = dataSourcesByShard.get(shard);
+
+        if (dataSource == null) {
+            throw new IllegalArgumentException("Shard " + shard + " does not exist.");
+        }
+
+        return dataSource;
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return ShardContext.current();
+    }
+
+    @Override
+    public void close() {
+        for (DataSource dataSource : dataSourcesByShard.values()) {
+            if (dataSource instanceof Closeable closeable) {
+                try {
+                    closeable.close();
+                } catch (Exception exception) {
+                    log.warn("Could not close data source.", exception);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.springbootbase.datasource;
+
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.boot.Metadata;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.service.spi.SessionFactoryServiceRegistry;
+import org.hibernate.tool.hbm2ddl.SchemaUpdate;
+import org.hibernate.tool.schema.TargetType;
+
+import java.util.EnumSet;
+import java.util.List;
+
+/**
+ * Creates the missing tables and sequences on the shards other than the
+ * primary, whose schema is managed by the usual spring.jpa settings. Meant
+ * for local databases, shards of a real deployment are migrated like the
+ * primary.
+ */
+@Slf4j
+public class ShardSchemaIntegrator implements Integrator {
+    private final List<String> shards;
+
+    public ShardSchemaIntegrator(List<String> shards) {
+        this.shards = shards;
+    }
+
+    @Override
+    @SuppressWarnings("try")
+    public void integrate(
+            Metadata metadata,
+            SessionFactoryImplementor sessionFactory,
+            SessionFactoryServiceRegistry serviceRegistry) {
+
+        for (String shard : shards) {
+            if (ShardRoutingDataSource.PRIMARY_SHARD.equals(shard)) {
+                continue;
+            }
+
+            try (ShardContext.Scope ignored = ShardContext.use(shard)) {
+                new SchemaUpdate().execute(EnumSet.of(TargetType.DATABASE), metadata, serviceRegistry);
+            }
+
+            log.info("Schema of shard {} updated.", shard);
+        }
+    }
+
+    @Override
+    public void disintegrate(SessionFactoryImplementor sessionFactory, SessionFactoryServiceRegistry serviceRegistry) {
+    }
+}
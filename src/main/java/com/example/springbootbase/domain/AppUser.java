@@ -5,31 +5,111 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.NaturalId;
+import org.hibernate.annotations.NaturalIdCache;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
 
 import javax.persistence.*;
+import java.text.Normalizer;
+import java.util.Locale;
 
+/* Users are cached in the second level cache, and resolved by normalized
+ * username through the natural id cache, so the users read on every request
+ * are rarely loaded from the database. The targeted updates evict only the
+ * user they change, see AppUserRepositoryImpl. */
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = AppUser.CACHE_REGION)
+@NaturalIdCache(region = AppUser.NATURAL_ID_CACHE_REGION)
+@Table(
+        name = "app_user",
+        uniqueConstraints = {
+                @UniqueConstraint(name = AppUser.USERNAME_CONSTRAINT, columnNames = "normalized_username"),
+                @UniqueConstraint(name = AppUser.EMAIL_CONSTRAINT, columnNames = "normalized_email")
+        }
+)
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
 @Builder
 public class AppUser {
+    // Names of the unique constraints, used to tell which column clashed on insert.
+    public static final String USERNAME_CONSTRAINT = "uk_app_user_normalized_username";
+    public static final String EMAIL_CONSTRAINT = "uk_app_user_normalized_email";
+
+    // Second level cache regions, configured in application.conf.
+    public static final String CACHE_REGION = "app-user";
+    public static final String NATURAL_ID_CACHE_REGION = "app-user-natural-id";
+    public static final String EMAIL_QUERY_CACHE_REGION = "app-user-by-email";
+
+    public static final String ID_SEQUENCE = "app_user_id_sequence";
+
+    /* Ids come from a sequence instead of an identity column, so Hibernate
+     * knows the id before the insert and can batch inserts. Ids are
+     * allocated in blocks, one sequence call per block. Ids assigned before
+     * the insert are kept, see AppUserDirectoryEntry. */
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "app_user_id_generator")
+    @GenericGenerator(
+            name = "app_user_id_generator",
+            strategy = AssignedIdOrSequenceGenerator.NAME,
+            parameters = {
+                    @Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = ID_SEQUENCE),
+                    @Parameter(name = SequenceStyleGenerator.INCREMENT_PARAM, value = "50")
+            }
+    )
     private Long id;
 
     private String firstName;
     private String lastName;
 
-    @Column(unique = true, nullable = false)
+    @Column(nullable = false)
     private String username;
 
-    @Column(unique = true, nullable = false)
+    @Column(nullable = false)
     private String email;
 
+    /* Case folded copies of the username and email, filled on every write.
+     * All lookups and the unique constraints use them, so lookups are case
+     * insensitive and still served by the unique indexes. They are nullable
+     * only so the columns can be added to tables with existing rows, which
+     * are backfilled at startup. */
+
+    // Mutable only so rows from before the column existed can be backfilled.
+    @NaturalId(mutable = true)
+    @Column(name = "normalized_username")
+    private String normalizedUsername;
+
+    @Column(name = "normalized_email")
+    private String normalizedEmail;
+
     @Column(nullable = false)
     private String password;
 
     @Enumerated(EnumType.STRING)
     private AppUserRole role;
+
+    // Incremented by every update, used to detect concurrent modifications.
+    @Version
+    private Long version;
+
+    /**
+     * Returns the value the way it is stored in the normalized columns.
+     * Compatibility characters are decomposed before case folding, so
+     * visually identical usernames can not be registered twice.
+     */
+    public static String normalize(String value) {
+        return value == null ? null : Normalizer.normalize(value, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+    }
+
+    @PrePersist
+    @PreUpdate
+    public void fillNormalizedColumns() {
+        normalizedUsername = normalize(username);
+        normalizedEmail = normalize(email);
+    }
 }
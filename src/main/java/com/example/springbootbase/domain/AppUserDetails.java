@@ -0,0 +1,113 @@
+package com.example.springbootbase.domain;
+
+import com.example.springbootbase.domain.enumeration.AppUserRole;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable user details which can be cached and shared between requests.
+ * Unlike the spring security User, it does not implement
+ * CredentialsContainer, so the authentication manager can not erase the
+ * password of a cached instance after a login. Authorities are shared
+ * between all users with the same role.
+ */
+public final class AppUserDetails implements UserDetails {
+    private static final Map<AppUserRole, List<GrantedAuthority>> AUTHORITIES_BY_ROLE = new EnumMap<>(AppUserRole.class);
+    private static final Map<String, List<GrantedAuthority>> AUTHORITIES_BY_ROLE_NAME = new HashMap<>();
+
+    static {
+        for (AppUserRole role : AppUserRole.values()) {
+            List<GrantedAuthority> authorities = List.of(new SimpleGrantedAuthority(role.name()));
+
+            AUTHORITIES_BY_ROLE.put(role, authorities);
+            AUTHORITIES_BY_ROLE_NAME.put(role.name(), authorities);
+        }
+    }
+
+    private final String username;
+    private final String password;
+    private final AppUserRole role;
+
+    public AppUserDetails(String username, String password, AppUserRole role) {
+        this.username = username;
+        this.password = password;
+        this.role = role;
+    }
+
+    /**
+     * Returns the shared authorities of the role with the given name, or
+     * new authorities for names which are not a known role.
+     */
+    public static Collection<GrantedAuthority> authoritiesOf(String roleName) {
+        List<GrantedAuthority> authorities = AUTHORITIES_BY_ROLE_NAME.get(roleName);
+        return authorities != null ? authorities : List.of(new SimpleGrantedAuthority(roleName));
+    }
+
+    /**
+     * Returns the shared authorities of the role.
+     */
+    public static Collection<GrantedAuthority> authoritiesOf(AppUserRole role) {
+        return role == null ? List.of() : AUTHORITIES_BY_ROLE.get(role);
+    }
+
+    public AppUserRole getRole() {
+        return role;
+    }
+
+    @Override
+    public Collection<GrantedAuthority> getAuthorities() {
+        return authoritiesOf(role);
+    }
+
+    @Override
+    public String getPassword() {
+        return password;
+    }
+
+    @Override
+    public String getUsername() {
+        return username;
+    }
+
+    @Override
+    public boolean isAccountNonExpired() {
+        return true;
+    }
+
+    @Override
+    public boolean isAccountNonLocked() {
+        return true;
+    }
+
+    @Override
+    public boolean isCredentialsNonExpired() {
+        return true;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof AppUserDetails appUserDetails && username.equals(appUserDetails.username);
+    }
+
+    @Override
+    public int hashCode() {
+        return username.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "AppUserDetails(username=" + username + ", role=" + role + ")";
+    }
+}
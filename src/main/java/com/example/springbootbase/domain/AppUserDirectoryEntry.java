@@ -0,0 +1,58 @@
+package com.example.springbootbase.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+
+import javax.persistence.*;
+
+/* Records the shard holding every user when users are sharded, so users
+ * can be found by id and email, which do not decide the shard. The table
+ * lives on the primary shard only, and its unique constraints keep
+ * usernames and emails unique across all shards. Ids are taken from the
+ * user id sequence of the primary shard and are also the ids of the users. */
+@Entity
+@Table(
+        name = "app_user_directory",
+        uniqueConstraints = {
+                @UniqueConstraint(
+                        name = AppUserDirectoryEntry.USERNAME_CONSTRAINT,
+                        columnNames = "normalized_username"
+                ),
+                @UniqueConstraint(name = AppUserDirectoryEntry.EMAIL_CONSTRAINT, columnNames = "normalized_email")
+        }
+)
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class AppUserDirectoryEntry {
+    public static final String USERNAME_CONSTRAINT = "uk_app_user_directory_normalized_username";
+    public static final String EMAIL_CONSTRAINT = "uk_app_user_directory_normalized_email";
+
+    // Users from before sharding was enabled are registered with their existing ids.
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "app_user_directory_id_generator")
+    @GenericGenerator(
+            name = "app_user_directory_id_generator",
+            strategy = AssignedIdOrSequenceGenerator.NAME,
+            parameters = {
+                    @Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = AppUser.ID_SEQUENCE),
+                    @Parameter(name = SequenceStyleGenerator.INCREMENT_PARAM, value = "50")
+            }
+    )
+    private Long id;
+
+    @Column(name = "normalized_username", nullable = false)
+    private String normalizedUsername;
+
+    @Column(name = "normalized_email", nullable = false)
+    private String normalizedEmail;
+
+    @Column(nullable = false)
+    private String shard;
+}
@@ -0,0 +1,19 @@
+package com.example.springbootbase.domain;
+
+import com.example.springbootbase.domain.enumeration.AppUserRole;
+import lombok.Value;
+
+/**
+ * Read only view of a user without the password, selected directly by
+ * listing queries so no entity is loaded or managed for it.
+ */
+@Value
+public class AppUserSummary {
+    Long id;
+    String firstName;
+    String lastName;
+    String username;
+    String email;
+    AppUserRole role;
+    Long version;
+}
@@ -0,0 +1,23 @@
+package com.example.springbootbase.domain;
+
+import org.hibernate.HibernateException;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+
+import java.io.Serializable;
+
+/**
+ * Sequence generator which keeps an id assigned before the entity is
+ * persisted. With sharding, ids of users are allocated by the user
+ * directory on the primary shard so they are unique across all shards.
+ */
+public class AssignedIdOrSequenceGenerator extends SequenceStyleGenerator {
+    public static final String NAME = "com.example.springbootbase.domain.AssignedIdOrSequenceGenerator";
+
+    @Override
+    public Serializable generate(SharedSessionContractImplementor session, Object object) throws HibernateException {
+        Serializable id = session.getEntityPersister(null, object).getIdentifier(object, session);
+
+        return id != null ? id : super.generate(session, object);
+    }
+}
@@ -17,4 +17,5 @@ public class AppUserDto {
     private String username;
     private String email;
     private AppUserRole role;
+    private Long version;
 }
@@ -0,0 +1,20 @@
+package com.example.springbootbase.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class AppUserLookupDto {
+    // Users in the order of the requested ids.
+    private List<AppUserDto> items;
+
+    // Requested ids without a user, in the order they were requested.
+    private List<Long> missingIds;
+}
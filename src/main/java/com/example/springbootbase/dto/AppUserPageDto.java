@@ -0,0 +1,19 @@
+package com.example.springbootbase.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class AppUserPageDto {
+    private List<AppUserDto> items;
+
+    // Passed as the cursor parameter to get the next page, null on the last page.
+    private String nextCursor;
+}
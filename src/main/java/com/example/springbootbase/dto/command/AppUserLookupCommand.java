@@ -0,0 +1,20 @@
+package com.example.springbootbase.dto.command;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class AppUserLookupCommand {
+    @NotNull
+    @Size(max = 10000)
+    private List<@NotNull Long> ids;
+}
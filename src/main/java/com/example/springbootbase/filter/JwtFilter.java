@@ -1,12 +1,12 @@
 package com.example.springbootbase.filter;
 
-import com.auth0.jwt.exceptions.JWTVerificationException;
-import com.auth0.jwt.exceptions.SignatureVerificationException;
-import com.auth0.jwt.exceptions.TokenExpiredException;
+import com.example.springbootbase.domain.AppUserDetails;
 import com.example.springbootbase.utility.JwtUtility;
+import com.example.springbootbase.utility.jwt.JwtAuthenticationToken;
+import com.example.springbootbase.utility.jwt.TokenValidationResult;
+import com.example.springbootbase.utility.jwt.VerifiedToken;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpHeaders;
-import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
@@ -17,6 +17,7 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.time.Instant;
 
 /* JwtFilter is not a component or a bean. It has to be instantiated
  * manually when adding it to the filter chain in security config.
@@ -32,14 +33,20 @@ import java.io.IOException;
 public class JwtFilter extends OncePerRequestFilter {
     private final UserDetailsService userDetailsService;
     private final JwtUtility jwtUtility;
+    private final boolean statelessAuthentication;
+    private final long statelessMaxStalenessMillis;
     private final String tokenPrefix = "Bearer ";
 
     public JwtFilter(
             UserDetailsService userDetailsService,
-            JwtUtility jwtUtility) {
+            JwtUtility jwtUtility,
+            boolean statelessAuthentication,
+            long statelessMaxStalenessMillis) {
 
         this.userDetailsService = userDetailsService;
         this.jwtUtility = jwtUtility;
+        this.statelessAuthentication = statelessAuthentication;
+        this.statelessMaxStalenessMillis = statelessMaxStalenessMillis;
     }
 
     @Override
@@ -78,42 +85,65 @@ public class JwtFilter extends OncePerRequestFilter {
             return;
         }
 
-        try {
-            String username = jwtUtility.validateAccessTokenAndRetrieveSubject(accessToken);
-            UserDetails userDetails = userDetailsService.loadUserByUsername(username);
+        TokenValidationResult validationResult = jwtUtility.validateAccessToken(accessToken);
 
-            UsernamePasswordAuthenticationToken authenticationToken = new UsernamePasswordAuthenticationToken(
-                    userDetails.getUsername(),
-                    userDetails.getPassword(),
-                    userDetails.getAuthorities()
-            );
-
-            log.debug(
-                    "JWT check successful. User with username {} saved to security context.",
-                    userDetails.getUsername()
-            );
-
-            SecurityContextHolder.getContext().setAuthentication(authenticationToken);
-        } catch (SignatureVerificationException exception) {
-            String message = "Could not verify access token signature.";
+        if (!validationResult.isValid()) {
+            String message = rejectionMessage(validationResult.getReason());
             log.debug(message);
             response.sendError(HttpServletResponse.SC_UNAUTHORIZED, message);
 
             return;
-        } catch (TokenExpiredException exception) {
-            String message = "Access token has timed out.";
-            log.debug(message);
-            response.sendError(HttpServletResponse.SC_UNAUTHORIZED, message);
+        }
 
-            return;
-        } catch (JWTVerificationException exception) {
-            String message = "Access token is not valid.";
-            log.debug(message);
-            response.sendError(HttpServletResponse.SC_UNAUTHORIZED, message);
+        VerifiedToken verifiedToken = validationResult.getVerifiedToken();
+        JwtAuthenticationToken authenticationToken;
 
-            return;
+        if (isClaimsBasedAuthenticationAllowed(verifiedToken)) {
+            authenticationToken = new JwtAuthenticationToken(
+                    accessToken,
+                    verifiedToken,
+                    AppUserDetails.authoritiesOf(verifiedToken.getRole()),
+                    true
+            );
+        } else {
+            UserDetails userDetails = userDetailsService.loadUserByUsername(verifiedToken.getSubject());
+
+            authenticationToken = new JwtAuthenticationToken(
+                    accessToken,
+                    verifiedToken,
+                    userDetails.getAuthorities(),
+                    false
+            );
         }
 
+        log.debug(
+                "JWT check successful. User with username {} saved to security context.",
+                authenticationToken.getPrincipal()
+        );
+
+        SecurityContextHolder.getContext().setAuthentication(authenticationToken);
+
         filterChain.doFilter(request, response);
     }
+
+    private static String rejectionMessage(TokenValidationResult.Reason reason) {
+        return switch (reason) {
+            case BAD_SIGNATURE -> "Could not verify access token signature.";
+            case EXPIRED -> "Access token has timed out.";
+            case REVOKED -> "Access token has been revoked.";
+            default -> "Access token is not valid.";
+        };
+    }
+
+    /* In stateless mode the authorities are taken from the role claim of the
+     * token instead of being loaded from the database. Role changes are not
+     * visible in tokens issued before the change, so claims are only trusted
+     * for tokens issued within the staleness window. Older tokens fall back
+     * to loading the user, which bounds how long a changed role can remain
+     * in effect. */
+    private boolean isClaimsBasedAuthenticationAllowed(VerifiedToken verifiedToken) {
+        return statelessAuthentication
+                && verifiedToken.getRole() != null
+                && verifiedToken.getIssuedAt().plusMillis(statelessMaxStalenessMillis).isAfter(Instant.now());
+    }
 }
@@ -2,6 +2,7 @@ package com.example.springbootbase.init;
 
 import com.example.springbootbase.domain.AppUser;
 import com.example.springbootbase.domain.enumeration.AppUserRole;
+import com.example.springbootbase.exception.ConflictException;
 import com.example.springbootbase.service.AppUserService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
@@ -28,21 +29,19 @@ public class AdminInitializer implements ApplicationRunner {
     private String adminPassword;
 
     @Override
-    public void run(ApplicationArguments args) throws Exception {
-        if (appUserService.findByUsername(adminUsername).isEmpty()) {
-            log.info(
-                    "Admin user with the username {} does not exist. Creating admin user.",
-                    adminUsername
-            );
-
-            AppUser appUser = AppUser.builder()
-                    .username(adminUsername)
-                    .email(adminEmail)
-                    .password(adminPassword)
-                    .build();
-
-            AppUser savedAppUser = appUserService.save(appUser);
-            appUserService.updateRoleByUsername(savedAppUser.getUsername(), AppUserRole.ROLE_ADMIN);
+    public void run(ApplicationArguments args) {
+        AppUser appUser = AppUser.builder()
+                .username(adminUsername)
+                .email(adminEmail)
+                .password(adminPassword)
+                .build();
+
+        // The unique constraints decide whether the admin user already exists.
+        try {
+            appUserService.save(appUser, AppUserRole.ROLE_ADMIN);
+            log.info("Admin user with the username {} created.", adminUsername);
+        } catch (ConflictException exception) {
+            log.info("Admin user not created. {}", exception.getMessage());
         }
     }
 }
@@ -0,0 +1,50 @@
+package com.example.springbootbase.init;
+
+import com.example.springbootbase.service.AppUserService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+/**
+ * Backfills the version and the normalized username and email columns of
+ * users created before the columns existed. Runs before the other
+ * initializers, since the admin initializer relies on the constraints on
+ * these columns.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+@Slf4j
+public class AppUserNormalizationInitializer implements ApplicationRunner {
+    private static final int BATCH_SIZE = 500;
+
+    private final AppUserService appUserService;
+
+    public AppUserNormalizationInitializer(AppUserService appUserService) {
+        this.appUserService = appUserService;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        int initialized = appUserService.initializeLegacyVersions();
+
+        if (initialized > 0) {
+            log.info("Initialized the version of {} existing users.", initialized);
+        }
+
+        long normalized = 0;
+        int batch;
+
+        // Every batch is committed in its own transaction.
+        do {
+            batch = appUserService.normalizeLegacyUsers(BATCH_SIZE);
+            normalized += batch;
+        } while (batch > 0);
+
+        if (normalized > 0) {
+            log.info("Normalized the username and email of {} existing users.", normalized);
+        }
+    }
+}
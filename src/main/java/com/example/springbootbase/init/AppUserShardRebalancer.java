@@ -0,0 +1,198 @@
+package com.example.springbootbase.init;
+
+import com.example.springbootbase.datasource.ShardResolver;
+import com.example.springbootbase.datasource.ShardRoutingDataSource;
+import com.example.springbootbase.domain.AppUserDirectoryEntry;
+import com.example.springbootbase.repository.AppUserDirectoryRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.simple.SimpleJdbcInsert;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Moves users to the shards they belong to, which changes when shards are
+ * added, and registers users which are missing from the directory, such as
+ * the users of the primary shard from before sharding was enabled. Enabled
+ * with sharding.rebalance-on-startup, and runs right after the normalized
+ * columns are backfilled, before any other initializer uses the directory.
+ *
+ * <p>A user is copied to its new shard, the directory is pointed to the
+ * copy and only then the old row is deleted, so users stay readable
+ * throughout and an interrupted run is finished by the next one. Rows are
+ * copied with plain JDBC, so the move does not depend on the mapping of
+ * every column. An update made on the old shard while the user is moved is
+ * copied again if it is seen before the old row is deleted, but can be lost
+ * if it commits later, so rebalancing is best run while users are not being
+ * changed.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 1)
+@ConditionalOnExpression("${sharding.enabled} and ${sharding.rebalance-on-startup}")
+@Slf4j
+public class AppUserShardRebalancer implements ApplicationRunner {
+    private final ShardRoutingDataSource shardRoutingDataSource;
+    private final ShardResolver shardResolver;
+    private final AppUserDirectoryRepository appUserDirectoryRepository;
+    private final int batchSize;
+    private final Map<String, JdbcTemplate> jdbcTemplatesByShard = new HashMap<>();
+    private final Map<String, SimpleJdbcInsert> insertsByShard = new HashMap<>();
+
+    public AppUserShardRebalancer(
+            ShardRoutingDataSource shardRoutingDataSource,
+            ShardResolver shardResolver,
+            AppUserDirectoryRepository appUserDirectoryRepository,
+            @Value("${sharding.rebalance-batch-size}") int batchSize) {
+
+        this.shardRoutingDataSource = shardRoutingDataSource;
+        this.shardResolver = shardResolver;
+        this.appUserDirectoryRepository = appUserDirectoryRepository;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        long registered = 0;
+        long moved = 0;
+
+        for (String shard : shardRoutingDataSource.getShards()) {
+            JdbcTemplate jdbcTemplate = jdbcTemplate(shard);
+            long afterId = 0;
+            List<Map<String, Object>> rows;
+
+            // Pages by id, so rows moved away from the shard do not shift the pages.
+            do {
+                rows = jdbcTemplate.queryForList(
+                        "select id, normalized_username, normalized_email from app_user where id > ? order by id",
+                        afterId
+                );
+
+                for (Map<String, Object> row : rows) {
+                    long id = ((Number) row.get("id")).longValue();
+                    afterId = id;
+
+                    Optional<AppUserDirectoryEntry> entryOptional = appUserDirectoryRepository.findById(id);
+                    AppUserDirectoryEntry entry;
+
+                    if (entryOptional.isPresent()) {
+                        entry = entryOptional.get();
+                    } else {
+                        entry = register(shard, id, (String) row.get("normalized_username"),
+                                (String) row.get("normalized_email"));
+
+                        if (entry == null) {
+                            continue;
+                        }
+
+                        registered++;
+                    }
+
+                    if (!entry.getShard().equals(shard)) {
+                        removeLeftoverCopy(shard, entry);
+                    } else if (!shard.equals(shardResolver.shardOf(entry.getNormalizedUsername()))) {
+                        move(entry, shardResolver.shardOf(entry.getNormalizedUsername()));
+                        moved++;
+                    }
+                }
+            } while (rows.size() == batchSize);
+        }
+
+        log.info("Shards rebalanced with {} users registered in the directory and {} users moved.", registered, moved);
+    }
+
+    private AppUserDirectoryEntry register(String shard, long id, String normalizedUsername, String normalizedEmail) {
+        if (normalizedUsername == null || normalizedEmail == null) {
+            log.warn("User with the id {} on shard {} is not normalized and was not registered.", id, shard);
+            return null;
+        }
+
+        try {
+            return appUserDirectoryRepository.saveAndFlush(AppUserDirectoryEntry.builder()
+                    .id(id)
+                    .normalizedUsername(normalizedUsername)
+                    .normalizedEmail(normalizedEmail)
+                    .shard(shard)
+                    .build());
+        } catch (DataIntegrityViolationException exception) {
+            log.warn(
+                    "User with the id {} on shard {} clashes with a registered user and was not registered.",
+                    id,
+                    shard
+            );
+            return null;
+        }
+    }
+
+    private void move(AppUserDirectoryEntry entry, String targetShard) {
+        String sourceShard = entry.getShard();
+        JdbcTemplate source = jdbcTemplate(sourceShard);
+        Long id = entry.getId();
+
+        Map<String, Object> row = source.queryForMap("select * from app_user where id = ?", id);
+        copy(row, targetShard);
+
+        entry.setShard(targetShard);
+        appUserDirectoryRepository.saveAndFlush(entry);
+
+        // Catches updates which went to the old shard during the copy.
+        Map<String, Object> currentRow = source.queryForMap("select * from app_user where id = ?", id);
+
+        if (!Objects.equals(row.get("version"), currentRow.get("version"))) {
+            copy(currentRow, targetShard);
+        }
+
+        source.update("delete from app_user where id = ?", id);
+
+        log.debug("User with the id {} moved from shard {} to shard {}.", id, sourceShard, targetShard);
+    }
+
+    // Replaces a copy left on the target shard by an interrupted run.
+    private void copy(Map<String, Object> row, String targetShard) {
+        jdbcTemplate(targetShard).update("delete from app_user where id = ?", row.get("id"));
+        insertsByShard
+                .computeIfAbsent(targetShard, shard -> new SimpleJdbcInsert(jdbcTemplate(shard))
+                        .withTableName("app_user"))
+                .execute(row);
+    }
+
+    // A run interrupted after pointing the directory to the new shard leaves the old row behind.
+    private void removeLeftoverCopy(String shard, AppUserDirectoryEntry entry) {
+        Integer copies = jdbcTemplate(entry.getShard()).queryForObject(
+                "select count(*) from app_user where id = ?",
+                Integer.class,
+                entry.getId()
+        );
+
+        if (copies == null || copies == 0) {
+            log.warn(
+                    "User with the id {} is registered on shard {} but only found on shard {}.",
+                    entry.getId(),
+                    entry.getShard(),
+                    shard
+            );
+            return;
+        }
+
+        jdbcTemplate(shard).update("delete from app_user where id = ?", entry.getId());
+    }
+
+    private JdbcTemplate jdbcTemplate(String shard) {
+        return jdbcTemplatesByShard.computeIfAbsent(shard, key -> {
+            JdbcTemplate jdbcTemplate = new JdbcTemplate(shardRoutingDataSource.getShardDataSource(key));
+            jdbcTemplate.setMaxRows(batchSize);
+            return jdbcTemplate;
+        });
+    }
+}
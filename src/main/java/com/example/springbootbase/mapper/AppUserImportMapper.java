@@ -0,0 +1,234 @@
+package com.example.springbootbase.mapper;
+
+import com.example.springbootbase.dto.command.AppUserImportCommand;
+import com.example.springbootbase.service.importing.AppUserImportRow;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.stereotype.Component;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Reads the rows of a user import lazily, one line at a time, so the
+ * imported file is never held in memory. Rows which can not be parsed or
+ * fail validation are returned as invalid rows instead of ending the
+ * import. The iterators throw UncheckedIOException if the file can not be
+ * read.
+ */
+@Component
+public class AppUserImportMapper {
+    private static final String[] CSV_COLUMNS = {"firstName", "lastName", "username", "email", "password"};
+
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+    private final AppUserMapper appUserMapper;
+
+    public AppUserImportMapper(ObjectMapper objectMapper, Validator validator, AppUserMapper appUserMapper) {
+        this.objectMapper = objectMapper;
+        this.validator = validator;
+        this.appUserMapper = appUserMapper;
+    }
+
+    /**
+     * Returns the rows of a file with a JSON object on every line.
+     */
+    public Iterator<AppUserImportRow> fromNdjson(BufferedReader reader) {
+        return new RowIterator(reader, 0) {
+            @Override
+            AppUserImportCommand parse(String line) {
+                AppUserImportCommand appUserImportCommand;
+
+                try {
+                    appUserImportCommand = objectMapper.readValue(line, AppUserImportCommand.class);
+                } catch (JsonProcessingException exception) {
+                    throw new IllegalArgumentException("Row is not a valid JSON object.", exception);
+                }
+
+                // A line with the JSON null literal.
+                if (appUserImportCommand == null) {
+                    throw new IllegalArgumentException("Row is not a valid JSON object.");
+                }
+
+                return appUserImportCommand;
+            }
+        };
+    }
+
+    /**
+     * Returns the rows of a CSV file. The first line must be a header
+     * naming the columns, which may come in any order. Quoted fields can not
+     * span lines. Throws IllegalArgumentException if the header is missing
+     * a required column.
+     */
+    public Iterator<AppUserImportRow> fromCsv(BufferedReader reader) throws IOException {
+        String header = reader.readLine();
+
+        if (header == null) {
+            throw new IllegalArgumentException("CSV file must start with a header.");
+        }
+
+        // Byte order mark written by some spreadsheet applications.
+        if (header.startsWith("\uFEFF")) {
+            header = header.substring(1);
+        }
+
+        Map<String, Integer> indexByColumn = new HashMap<>();
+        List<String> headerFields = parseCsvLine(header);
+
+        for (int i = 0; i < headerFields.size(); i++) {
+            indexByColumn.put(headerFields.get(i).trim().toLowerCase(Locale.ROOT), i);
+        }
+
+        int[] columnIndexes = new int[CSV_COLUMNS.length];
+
+        for (int i = 0; i < CSV_COLUMNS.length; i++) {
+            columnIndexes[i] = indexByColumn.getOrDefault(CSV_COLUMNS[i].toLowerCase(Locale.ROOT), -1);
+        }
+
+        if (columnIndexes[2] < 0 || columnIndexes[3] < 0 || columnIndexes[4] < 0) {
+            throw new IllegalArgumentException("CSV header must contain the username, email and password columns.");
+        }
+
+        return new RowIterator(reader, 1) {
+            @Override
+            AppUserImportCommand parse(String line) {
+                List<String> fields = parseCsvLine(line);
+
+                return AppUserImportCommand.builder()
+                        .firstName(field(fields, columnIndexes[0]))
+                        .lastName(field(fields, columnIndexes[1]))
+                        .username(field(fields, columnIndexes[2]))
+                        .email(field(fields, columnIndexes[3]))
+                        .password(field(fields, columnIndexes[4]))
+                        .build();
+            }
+        };
+    }
+
+    private static String field(List<String> fields, int index) {
+        if (index < 0 || index >= fields.size() || fields.get(index).isEmpty()) {
+            return null;
+        }
+
+        return fields.get(index);
+    }
+
+    /* Splits a line into fields. Fields can be quoted to contain commas,
+     * with quotes inside quoted fields written twice. */
+    private static List<String> parseCsvLine(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+
+        for (int i = 0; i < line.length(); i++) {
+            char character = line.charAt(i);
+
+            if (quoted) {
+                if (character != '"') {
+                    field.append(character);
+                } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (character == '"' && field.length() == 0) {
+                quoted = true;
+            } else if (character == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(character);
+            }
+        }
+
+        if (quoted) {
+            throw new IllegalArgumentException("Row has a quoted field which is not closed.");
+        }
+
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private abstract class RowIterator implements Iterator<AppUserImportRow> {
+        private final BufferedReader reader;
+        private long line;
+        private String nextLine;
+
+        RowIterator(BufferedReader reader, long linesRead) {
+            this.reader = reader;
+            this.line = linesRead;
+        }
+
+        // Throws IllegalArgumentException if the line can not be parsed.
+        abstract AppUserImportCommand parse(String line);
+
+        @Override
+        public boolean hasNext() {
+            try {
+                // Blank lines are skipped, but still counted so the line numbers match the file.
+                while (nextLine == null) {
+                    String readLine = reader.readLine();
+
+                    if (readLine == null) {
+                        return false;
+                    }
+
+                    line++;
+
+                    if (!readLine.isBlank()) {
+                        nextLine = readLine;
+                    }
+                }
+
+                return true;
+            } catch (IOException exception) {
+                throw new UncheckedIOException(exception);
+            }
+        }
+
+        @Override
+        public AppUserImportRow next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            String currentLine = nextLine;
+            nextLine = null;
+
+            AppUserImportCommand appUserImportCommand;
+
+            try {
+                appUserImportCommand = parse(currentLine);
+            } catch (IllegalArgumentException exception) {
+                return AppUserImportRow.invalid(line, exception.getMessage());
+            }
+
+            Set<ConstraintViolation<AppUserImportCommand>> violations = validator.validate(appUserImportCommand);
+
+            if (!violations.isEmpty()) {
+                String message = violations.stream()
+                        .map(violation -> violation.getPropertyPath() + " " + violation.getMessage())
+                        .sorted()
+                        .collect(Collectors.joining(", "));
+
+                return AppUserImportRow.invalid(line, message + ".");
+            }
+
+            return AppUserImportRow.of(line, appUserMapper.toEntity(appUserImportCommand));
+        }
+    }
+}
@@ -1,11 +1,24 @@
 package com.example.springbootbase.mapper;
 
 import com.example.springbootbase.domain.AppUser;
+import com.example.springbootbase.domain.AppUserSummary;
 import com.example.springbootbase.dto.AppUserDto;
+import com.example.springbootbase.dto.AppUserLookupDto;
+import com.example.springbootbase.dto.AppUserSearchResultDto;
+import com.example.springbootbase.dto.command.AppUserImportCommand;
 import com.example.springbootbase.dto.command.AppUserRegistrationCommand;
 import com.example.springbootbase.dto.command.AppUserUpdateCommand;
+import com.example.springbootbase.service.search.AppUserSearchHit;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 @Component
 public class AppUserMapper {
     public AppUserDto toDto(AppUser appUser) {
@@ -16,6 +29,64 @@ public class AppUserMapper {
                 .username(appUser.getUsername())
                 .email(appUser.getEmail())
                 .role(appUser.getRole())
+                .version(appUser.getVersion())
+                .build();
+    }
+
+    public AppUserDto toDto(AppUserSummary appUserSummary) {
+        return AppUserDto.builder()
+                .id(appUserSummary.getId())
+                .firstName(appUserSummary.getFirstName())
+                .lastName(appUserSummary.getLastName())
+                .username(appUserSummary.getUsername())
+                .email(appUserSummary.getEmail())
+                .role(appUserSummary.getRole())
+                .version(appUserSummary.getVersion())
+                .build();
+    }
+
+    /* Maps the users found for the ids in one pass over the ids, keeping
+     * their order. Ids without a user are listed as missing, and repeated
+     * ids are only mapped once. */
+    public AppUserLookupDto toLookupDto(List<Long> ids, Collection<AppUserSummary> appUserSummaries) {
+        Map<Long, AppUserSummary> appUserSummariesById = new HashMap<>(appUserSummaries.size() * 2);
+
+        for (AppUserSummary appUserSummary : appUserSummaries) {
+            appUserSummariesById.put(appUserSummary.getId(), appUserSummary);
+        }
+
+        List<AppUserDto> items = new ArrayList<>(appUserSummaries.size());
+        List<Long> missingIds = new ArrayList<>();
+        Set<Long> mappedIds = new HashSet<>(ids.size() * 2);
+
+        for (Long id : ids) {
+            if (!mappedIds.add(id)) {
+                continue;
+            }
+
+            AppUserSummary appUserSummary = appUserSummariesById.get(id);
+
+            if (appUserSummary == null) {
+                missingIds.add(id);
+            } else {
+                items.add(toDto(appUserSummary));
+            }
+        }
+
+        return AppUserLookupDto.builder()
+                .items(items)
+                .missingIds(missingIds)
+                .build();
+    }
+
+    public AppUserSearchResultDto toDto(AppUserSearchHit appUserSearchHit) {
+        return AppUserSearchResultDto.builder()
+                .id(appUserSearchHit.getId())
+                .firstName(appUserSearchHit.getFirstName())
+                .lastName(appUserSearchHit.getLastName())
+                .username(appUserSearchHit.getUsername())
+                .email(appUserSearchHit.getEmail())
+                .score(appUserSearchHit.getScore())
                 .build();
     }
 
@@ -29,6 +100,16 @@ public class AppUserMapper {
                 .build();
     }
 
+    public AppUser toEntity(AppUserImportCommand appUserImportCommand) {
+        return AppUser.builder()
+                .firstName(appUserImportCommand.getFirstName())
+                .lastName(appUserImportCommand.getLastName())
+                .username(appUserImportCommand.getUsername())
+                .email(appUserImportCommand.getEmail())
+                .password(appUserImportCommand.getPassword())
+                .build();
+    }
+
     public AppUser toEntity(AppUserUpdateCommand appUserUpdateCommand) {
         return AppUser.builder()
                 .firstName(appUserUpdateCommand.getFirstName())
@@ -0,0 +1,15 @@
+package com.example.springbootbase.repository;
+
+import com.example.springbootbase.domain.AppUserDirectoryEntry;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.Optional;
+
+/* Lookups take the normalized value, see AppUser.normalize. The directory
+ * lives on the primary shard, so it must not be used while the current
+ * thread is switched to another shard. */
+public interface AppUserDirectoryRepository extends JpaRepository<AppUserDirectoryEntry, Long> {
+    Optional<AppUserDirectoryEntry> findByNormalizedUsername(String normalizedUsername);
+
+    Optional<AppUserDirectoryEntry> findByNormalizedEmail(String normalizedEmail);
+}
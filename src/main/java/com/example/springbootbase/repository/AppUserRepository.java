@@ -1,18 +1,117 @@
 package com.example.springbootbase.repository;
 
 import com.example.springbootbase.domain.AppUser;
+import com.example.springbootbase.domain.AppUserDetails;
+import com.example.springbootbase.domain.AppUserSummary;
+import com.example.springbootbase.domain.enumeration.AppUserRole;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.QueryHint;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
-public interface AppUserRepository extends JpaRepository<AppUser, Long> {
-    Optional<AppUser> findByUsername(String username);
+import static org.hibernate.jpa.QueryHints.HINT_CACHEABLE;
+import static org.hibernate.jpa.QueryHints.HINT_CACHE_MODE;
+import static org.hibernate.jpa.QueryHints.HINT_CACHE_REGION;
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
 
-    Optional<AppUser> findByEmail(String email);
+public interface AppUserRepository extends JpaRepository<AppUser, Long>, AppUserRepositoryCustom {
+    // Number of rows fetched from the database at a time when streaming users.
+    int STREAM_FETCH_SIZE = 500;
 
-    Boolean existsByUsername(String username);
+    /* Lookups by username and email take the normalized value, see
+     * AppUser.normalize. The lookup by username is a natural id lookup, see
+     * AppUserRepositoryCustom. Email is not part of the natural id, so its
+     * results are kept in the query cache instead, which is invalidated
+     * whenever the table changes. */
 
-    Boolean existsByEmail(String email);
+    @QueryHints({
+            @QueryHint(name = HINT_CACHEABLE, value = "true"),
+            @QueryHint(name = HINT_CACHE_REGION, value = AppUser.EMAIL_QUERY_CACHE_REGION)
+    })
+    Optional<AppUser> findByNormalizedEmail(String normalizedEmail);
 
-    void deleteByUsername(String username);
+    /* Selects only the columns needed for authentication into an immutable
+     * object, so no entity is managed and no dirty checking snapshot is
+     * kept for it. */
+    @Transactional(readOnly = true)
+    @Query("select new com.example.springbootbase.domain.AppUserDetails(u.username, u.password, u.role) "
+            + "from AppUser u where u.normalizedUsername = :normalizedUsername")
+    Optional<AppUserDetails> findDetailsByNormalizedUsername(@Param("normalizedUsername") String normalizedUsername);
+
+    /* Keyset pagination, returns the users with an id greater than afterId
+     * in id order. The primary key index seeks straight to the first row, so
+     * every page costs the same however deep it is. The role and name prefix
+     * filters are skipped when null. The prefix matches the start of the
+     * username, first name or last name, and must already end with % and
+     * have its wildcards escaped with a backslash. */
+    @Transactional(readOnly = true)
+    @Query("select new com.example.springbootbase.domain.AppUserSummary("
+            + "u.id, u.firstName, u.lastName, u.username, u.email, u.role, u.version) "
+            + "from AppUser u where u.id > :afterId "
+            + "and (:role is null or u.role = :role) "
+            + "and (:namePattern is null or u.username like :namePattern escape '\\' "
+            + "or u.firstName like :namePattern escape '\\' or u.lastName like :namePattern escape '\\') "
+            + "order by u.id")
+    List<AppUserSummary> findPageAfter(
+            @Param("afterId") long afterId,
+            @Param("role") AppUserRole role,
+            @Param("namePattern") String namePattern,
+            Pageable pageable);
+
+    /* Selects the users with the given ids, in no particular order. Callers
+     * pass the ids in chunks, see AppUserService.findAllByIds. */
+    @Transactional(readOnly = true)
+    @Query("select new com.example.springbootbase.domain.AppUserSummary("
+            + "u.id, u.firstName, u.lastName, u.username, u.email, u.role, u.version) "
+            + "from AppUser u where u.id in :ids")
+    List<AppUserSummary> findSummariesByIdIn(@Param("ids") Collection<Long> ids);
+
+    /* Return which of the given normalized usernames and emails are already
+     * taken, so an import can check a whole chunk of rows with one query per
+     * column. */
+
+    @Query("select u.normalizedUsername from AppUser u where u.normalizedUsername in :normalizedUsernames")
+    List<String> findNormalizedUsernamesIn(@Param("normalizedUsernames") Collection<String> normalizedUsernames);
+
+    @Query("select u.normalizedEmail from AppUser u where u.normalizedEmail in :normalizedEmails")
+    List<String> findNormalizedEmailsIn(@Param("normalizedEmails") Collection<String> normalizedEmails);
+
+    /* Streams all users by id, fetching a bounded number of rows at a time.
+     * Loaded users are read only, so no dirty checking snapshots are kept,
+     * but they stay in the persistence context until it is cleared. They are
+     * not put into the second level cache, which a full scan would flush and
+     * which a scan of a lagging replica would fill with old rows. Must be
+     * called in a transaction and the stream must be closed. */
+    @QueryHints({
+            @QueryHint(name = HINT_FETCH_SIZE, value = "" + STREAM_FETCH_SIZE),
+            @QueryHint(name = HINT_READONLY, value = "true"),
+            @QueryHint(name = HINT_CACHE_MODE, value = "GET")
+    })
+    @Query("select u from AppUser u order by u.id")
+    Stream<AppUser> streamAll();
+
+    // Users written before the normalized columns existed, see AppUser.normalize.
+    @Query("select u from AppUser u where u.normalizedUsername is null or u.normalizedEmail is null order by u.id")
+    List<AppUser> findNotNormalized(Pageable pageable);
+
+    /* Users written before the version column existed have no version.
+     * Updates guarded by the version never match them and Hibernate can not
+     * increment it, so they start at version 0. */
+    @Modifying
+    @Query("update AppUser u set u.version = 0 where u.version is null")
+    int initializeMissingVersions();
+
+    Boolean existsByNormalizedUsername(String normalizedUsername);
+
+    Boolean existsByNormalizedEmail(String normalizedEmail);
 }
@@ -0,0 +1,39 @@
+package com.example.springbootbase.repository;
+
+import com.example.springbootbase.domain.AppUser;
+import com.example.springbootbase.domain.enumeration.AppUserRole;
+
+import java.util.Optional;
+
+public interface AppUserRepositoryCustom {
+    /* Resolves the user through the natural id cache and loads it from the
+     * second level cache, only going to the database on a miss. */
+    Optional<AppUser> findByNormalizedUsername(String normalizedUsername);
+
+    /* Targeted updates which change only the affected columns in a single
+     * statement and increment the version. The version is only compared when
+     * checkVersion is true. They return the number of updated rows, which is
+     * zero if the user does not exist or the version does not match. They
+     * leave the second level cache alone, so callers must evict the updated
+     * user from it, see AppUserRepositoryImpl. */
+
+    int updateProfileByNormalizedUsername(
+            String normalizedUsername,
+            String normalizedEmail,
+            String firstName,
+            String lastName,
+            boolean checkVersion,
+            long version);
+
+    int updatePasswordByNormalizedUsername(
+            String normalizedUsername,
+            String password,
+            boolean checkVersion,
+            long version);
+
+    int updateRoleByNormalizedUsername(
+            String normalizedUsername,
+            AppUserRole role,
+            boolean checkVersion,
+            long version);
+}
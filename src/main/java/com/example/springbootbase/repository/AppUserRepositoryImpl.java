@@ -0,0 +1,126 @@
+package com.example.springbootbase.repository;
+
+import com.example.springbootbase.domain.AppUser;
+import com.example.springbootbase.domain.enumeration.AppUserRole;
+import org.hibernate.Session;
+import org.hibernate.query.NativeQuery;
+import org.hibernate.type.StringType;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import java.util.Optional;
+
+public class AppUserRepositoryImpl implements AppUserRepositoryCustom {
+    /* Query space of the targeted updates, which no entity is mapped to.
+     * Hibernate evicts the whole second level cache region of every entity
+     * in the query spaces of an update statement, or of all entities if it
+     * has none, so one changed user would evict every cached user. */
+    private static final String TARGETED_UPDATE_QUERY_SPACE = "app_user_targeted_update";
+
+    private final EntityManager entityManager;
+
+    public AppUserRepositoryImpl(EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Optional<AppUser> findByNormalizedUsername(String normalizedUsername) {
+        return entityManager
+                .unwrap(Session.class)
+                .bySimpleNaturalId(AppUser.class)
+                .loadOptional(normalizedUsername);
+    }
+
+    @Override
+    @Transactional
+    public int updateProfileByNormalizedUsername(
+            String normalizedUsername,
+            String normalizedEmail,
+            String firstName,
+            String lastName,
+            boolean checkVersion,
+            long version) {
+
+        NativeQuery<?> query = createTargetedUpdate(
+                "update app_user set first_name = :firstName, last_name = :lastName, version = version + 1 "
+                        + "where normalized_username = :normalizedUsername and normalized_email = :normalizedEmail",
+                checkVersion,
+                version
+        );
+
+        query.setParameter("firstName", firstName, StringType.INSTANCE);
+        query.setParameter("lastName", lastName, StringType.INSTANCE);
+        query.setParameter("normalizedUsername", normalizedUsername);
+        query.setParameter("normalizedEmail", normalizedEmail);
+
+        return execute(query);
+    }
+
+    @Override
+    @Transactional
+    public int updatePasswordByNormalizedUsername(
+            String normalizedUsername,
+            String password,
+            boolean checkVersion,
+            long version) {
+
+        NativeQuery<?> query = createTargetedUpdate(
+                "update app_user set password = :password, version = version + 1 "
+                        + "where normalized_username = :normalizedUsername",
+                checkVersion,
+                version
+        );
+
+        query.setParameter("password", password);
+        query.setParameter("normalizedUsername", normalizedUsername);
+
+        return execute(query);
+    }
+
+    @Override
+    @Transactional
+    public int updateRoleByNormalizedUsername(
+            String normalizedUsername,
+            AppUserRole role,
+            boolean checkVersion,
+            long version) {
+
+        NativeQuery<?> query = createTargetedUpdate(
+                "update app_user set role = :role, version = version + 1 "
+                        + "where normalized_username = :normalizedUsername",
+                checkVersion,
+                version
+        );
+
+        query.setParameter("role", role.name());
+        query.setParameter("normalizedUsername", normalizedUsername);
+
+        return execute(query);
+    }
+
+    private NativeQuery<?> createTargetedUpdate(String sql, boolean checkVersion, long version) {
+        NativeQuery<?> query = entityManager
+                .unwrap(Session.class)
+                .createNativeQuery(checkVersion ? sql + " and version = :version" : sql)
+                .addSynchronizedQuerySpace(TARGETED_UPDATE_QUERY_SPACE);
+
+        if (checkVersion) {
+            query.setParameter("version", version);
+        }
+
+        return query;
+    }
+
+    /* Flushes pending changes before the statement and clears the
+     * persistence context after it, as users loaded before it no longer
+     * match their rows. */
+    private int execute(NativeQuery<?> query) {
+        entityManager.flush();
+
+        int updatedRows = query.executeUpdate();
+
+        entityManager.clear();
+        return updatedRows;
+    }
+}
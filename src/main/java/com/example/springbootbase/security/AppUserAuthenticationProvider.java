@@ -0,0 +1,74 @@
+package com.example.springbootbase.security;
+
+import com.example.springbootbase.domain.AppUser;
+import com.example.springbootbase.domain.AppUserDetails;
+import com.example.springbootbase.service.AppUserService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Authenticates the login credentials with a single lookup of the user.
+ * The authenticated AppUser is returned as the principal, so the login
+ * flow can generate the tokens without loading the user again.
+ *
+ * Unknown usernames are checked against a dummy hash, so they take as long
+ * as a wrong password and the response time does not reveal which
+ * usernames exist.
+ */
+@Component
+@Slf4j
+public class AppUserAuthenticationProvider implements AuthenticationProvider {
+    private static final String BAD_CREDENTIALS_MESSAGE = "Username or password incorrect.";
+
+    private final AppUserService appUserService;
+    private final PasswordEncoder passwordEncoder;
+    private final String dummyPasswordHash;
+
+    public AppUserAuthenticationProvider(AppUserService appUserService, PasswordEncoder passwordEncoder) {
+        this.appUserService = appUserService;
+        this.passwordEncoder = passwordEncoder;
+        this.dummyPasswordHash = passwordEncoder.encode(UUID.randomUUID().toString());
+    }
+
+    @Override
+    public Authentication authenticate(Authentication authentication) throws AuthenticationException {
+        String username = authentication.getName();
+        String password = authentication.getCredentials() == null ? "" : authentication.getCredentials().toString();
+
+        Optional<AppUser> userOptional = appUserService.findByUsername(username);
+
+        if (userOptional.isEmpty()) {
+            passwordEncoder.matches(password, dummyPasswordHash);
+
+            log.info("User with the username {} does not exist.", username);
+            throw new BadCredentialsException(BAD_CREDENTIALS_MESSAGE);
+        }
+
+        AppUser appUser = userOptional.get();
+
+        if (!passwordEncoder.matches(password, appUser.getPassword())) {
+            log.info("Wrong password for the user with the username {}.", username);
+            throw new BadCredentialsException(BAD_CREDENTIALS_MESSAGE);
+        }
+
+        return new UsernamePasswordAuthenticationToken(
+                appUser,
+                null,
+                AppUserDetails.authoritiesOf(appUser.getRole())
+        );
+    }
+
+    @Override
+    public boolean supports(Class<?> authentication) {
+        return UsernamePasswordAuthenticationToken.class.isAssignableFrom(authentication);
+    }
+}
@@ -0,0 +1,15 @@
+package com.example.springbootbase.service;
+
+import com.example.springbootbase.service.importing.AppUserImportResult;
+import com.example.springbootbase.service.importing.AppUserImportRow;
+
+import java.util.Iterator;
+import java.util.function.Consumer;
+
+public interface AppUserImportService {
+    /* Imports the rows as users with the user role. Rows are read and
+     * committed in chunks, so only a chunk is held in memory at a time, and
+     * the result of every row is passed to the consumer in row order once
+     * its chunk is done. */
+    void importUsers(Iterator<AppUserImportRow> rows, Consumer<AppUserImportResult> resultConsumer);
+}
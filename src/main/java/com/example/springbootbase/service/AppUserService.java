@@ -1,26 +1,72 @@
 package com.example.springbootbase.service;
 
 import com.example.springbootbase.domain.AppUser;
+import com.example.springbootbase.domain.AppUserSummary;
 import com.example.springbootbase.domain.enumeration.AppUserRole;
 import com.example.springbootbase.exception.ConflictException;
 import com.example.springbootbase.exception.NotFoundException;
+import com.example.springbootbase.exception.PreconditionFailedException;
+import com.example.springbootbase.service.search.AppUserSearchHit;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 public interface AppUserService {
     AppUser save(AppUser appUser) throws ConflictException;
 
+    AppUser save(AppUser appUser, AppUserRole role) throws ConflictException;
+
     Optional<AppUser> find(Long id);
 
+    /* Usernames and emails are matched case insensitively, see
+     * AppUser.normalize. */
+
     Optional<AppUser> findByUsername(String username);
 
     Optional<AppUser> findByEmail(String email);
 
-    AppUser updateByUsername(String username, AppUser updatedAppUser) throws NotFoundException, ConflictException;
+    /* Returns the users with the given ids which exist, in no particular
+     * order. Ids are looked up in chunks with one query per chunk. */
+    List<AppUserSummary> findAllByIds(Collection<Long> ids);
+
+    /* Returns up to limit users with an id greater than afterId, in id
+     * order. The role and name prefix filters are skipped when null. */
+    List<AppUserSummary> findPage(AppUserRole role, String namePrefix, long afterId, int limit);
+
+    /* Returns up to limit users matching the query from the search index,
+     * best matches first. */
+    List<AppUserSearchHit> search(String query, int limit);
+
+    /* Passes every user to the consumer, ordered by id, or ordered by id
+     * within every shard when users are sharded. Users are streamed from the
+     * database, so memory use does not grow with their number. */
+    void exportAll(Consumer<AppUser> consumer);
 
-    AppUser updatePasswordByUsername(String username, String password) throws NotFoundException;
+    /* The update methods only check the version of the user if the expected
+     * version is not null. */
 
-    AppUser updateRoleByUsername(String username, AppUserRole role) throws NotFoundException;
+    AppUser updateByUsername(String username, AppUser updatedAppUser, Long expectedVersion) throws
+            NotFoundException,
+            ConflictException,
+            PreconditionFailedException;
+
+    AppUser updatePasswordByUsername(String username, String password, Long expectedVersion) throws
+            NotFoundException,
+            PreconditionFailedException;
+
+    AppUser updateRoleByUsername(String username, AppUserRole role, Long expectedVersion) throws
+            NotFoundException,
+            PreconditionFailedException;
 
     void deleteByUsername(String username) throws NotFoundException;
+
+    /* Backfill of users written before the version and normalized columns
+     * existed. Versions are initialized first, as the normalization is an
+     * update of the users. */
+
+    int initializeLegacyVersions();
+
+    int normalizeLegacyUsers(int batchSize);
 }
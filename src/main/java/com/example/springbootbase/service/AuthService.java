@@ -1,19 +1,24 @@
 package com.example.springbootbase.service;
 
-import com.auth0.jwt.exceptions.JWTVerificationException;
 import com.example.springbootbase.domain.AppUser;
 import com.example.springbootbase.exception.NotFoundException;
+import com.example.springbootbase.utility.jwt.TokenValidationResult;
+import com.example.springbootbase.utility.jwt.VerifiedToken;
 import org.springframework.security.core.AuthenticationException;
 
 import java.util.Map;
 import java.util.Optional;
 
 public interface AuthService {
-    Map<String, String> login(String username, String password) throws
-            NotFoundException,
-            AuthenticationException;
+    Map<String, String> login(String username, String password) throws AuthenticationException;
 
     Optional<AppUser> getCurrentlyAuthenticatedUser();
 
-    String refreshAccessToken(String refreshToken) throws JWTVerificationException, NotFoundException;
+    TokenValidationResult validateAccessToken(String accessToken);
+
+    TokenValidationResult validateRefreshToken(String refreshToken);
+
+    String refreshAccessToken(VerifiedToken refreshToken) throws NotFoundException;
+
+    void logout(String refreshToken);
 }
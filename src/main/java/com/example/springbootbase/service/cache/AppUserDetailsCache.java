@@ -0,0 +1,138 @@
+package com.example.springbootbase.service.cache;
+
+import com.example.springbootbase.domain.AppUserDetails;
+import com.example.springbootbase.utility.SingleFlight;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Bounded cache of user details keyed by normalized username, in front of
+ * the query which runs for every authenticated request. Entries are
+ * invalidated when the user changes and expire after a TTL, which bounds
+ * how long changes made outside of the service can remain invisible. Size
+ * and hit ratio are published as cache metrics, the latency of loads as a
+ * separate timer, since loads do not run through the cache.
+ *
+ * <p>Concurrent misses for the same username, as when the entry of an
+ * account used by many requests expires, share a single load, see
+ * SingleFlight. Loads run outside of the cache, since a load inside it
+ * would hold a lock of the underlying map, blocking loads of other
+ * usernames as well, and make callers wait for it without a bound.
+ */
+@Component
+@Slf4j
+public class AppUserDetailsCache {
+    public static final String CACHE_NAME = "app-user-details";
+    public static final String LOADS_METRIC_NAME = "app.user.details.loads";
+    public static final String LOAD_METRIC_NAME = "app.user.details.load";
+
+    // Null if the cache is disabled.
+    private final Cache<String, AppUserDetails> cache;
+
+    private final SingleFlight<String, AppUserDetails> loads;
+
+    private final Timer loadTimer;
+
+    // Incremented by every invalidation, so a load which overlapped one is not kept.
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public AppUserDetailsCache(
+            @Value("${security.user-details.cache.enabled}") boolean enabled,
+            @Value("${security.user-details.cache.maximum-size}") long maximumSize,
+            @Value("${security.user-details.cache.time-to-live-millis}") long timeToLiveMillis,
+            @Value("${security.user-details.load.max-wait-millis}") long loadMaxWaitMillis,
+            MeterRegistry meterRegistry) {
+
+        this.loads = new SingleFlight<>(LOADS_METRIC_NAME, Duration.ofMillis(loadMaxWaitMillis), meterRegistry);
+        this.loadTimer = Timer.builder(LOAD_METRIC_NAME)
+                .description("Time taken to load user details on a cache miss")
+                .tag("cache", CACHE_NAME)
+                .register(meterRegistry);
+
+        if (!enabled) {
+            log.info("User details cache is disabled.");
+            this.cache = null;
+            return;
+        }
+
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(Duration.ofMillis(timeToLiveMillis))
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+    }
+
+    /**
+     * Returns the cached user details, loading them with the provided
+     * function on a miss. Exceptions thrown by the function are propagated
+     * to every caller sharing the load and nothing is cached for the
+     * username.
+     */
+    public AppUserDetails get(String username, Function<String, AppUserDetails> loader) {
+        if (cache == null) {
+            return loads.execute(username, key -> loadTimer.record(() -> loader.apply(key)));
+        }
+
+        AppUserDetails cachedUserDetails = cache.getIfPresent(username);
+
+        if (cachedUserDetails != null) {
+            return cachedUserDetails;
+        }
+
+        return loads.execute(username, key -> load(key, loader));
+    }
+
+    /**
+     * Removes the user details right away and once more after the current
+     * transaction completes, so a request which loaded the old row before
+     * the commit can not leave it in the cache.
+     */
+    public void invalidate(String username) {
+        if (cache == null) {
+            return;
+        }
+
+        invalidations.incrementAndGet();
+        cache.invalidate(username);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    invalidations.incrementAndGet();
+                    cache.invalidate(username);
+                }
+            });
+        }
+    }
+
+    /* The load may read the row before a change whose invalidation runs
+     * before the put. Checking for invalidations after the put covers the
+     * ones up to then, later ones remove the entry themselves. */
+    private AppUserDetails load(String username, Function<String, AppUserDetails> loader) {
+        long invalidationsBeforeLoad = invalidations.get();
+        AppUserDetails userDetails = loadTimer.record(() -> loader.apply(username));
+
+        cache.put(username, userDetails);
+
+        if (invalidations.get() != invalidationsBeforeLoad) {
+            cache.asMap().remove(username, userDetails);
+        }
+
+        return userDetails;
+    }
+}
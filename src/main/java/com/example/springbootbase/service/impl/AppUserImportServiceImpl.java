@@ -0,0 +1,277 @@
+package com.example.springbootbase.service.impl;
+
+import com.example.springbootbase.domain.AppUser;
+import com.example.springbootbase.domain.enumeration.AppUserRole;
+import com.example.springbootbase.repository.AppUserRepository;
+import com.example.springbootbase.service.AppUserImportService;
+import com.example.springbootbase.service.importing.AppUserImportResult;
+import com.example.springbootbase.service.importing.AppUserImportRow;
+import com.example.springbootbase.service.search.AppUserSearchIndex;
+import com.example.springbootbase.utility.ConstraintViolationUtility;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Imports users in chunks. Every chunk is checked against the existing
+ * users with one query per unique column, its passwords are hashed in
+ * parallel and its users are inserted in JDBC batches in one transaction.
+ * Hashing runs on its own pool, so an import does not fill the queue of
+ * the pool used by logins and registrations. Replaced by
+ * ShardedAppUserImportServiceImpl when users are sharded.
+ */
+@Service
+@ConditionalOnProperty(name = "sharding.enabled", havingValue = "false", matchIfMissing = true)
+@Slf4j
+public class AppUserImportServiceImpl implements AppUserImportService {
+    private final AppUserRepository appUserRepository;
+    private final PasswordEncoder passwordEncoder;
+    private final AppUserSearchIndex appUserSearchIndex;
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+    private final int chunkSize;
+    private final int batchSize;
+    private final ExecutorService hashingExecutor;
+
+    public AppUserImportServiceImpl(
+            AppUserRepository appUserRepository,
+            PasswordEncoder passwordEncoder,
+            AppUserSearchIndex appUserSearchIndex,
+            EntityManager entityManager,
+            PlatformTransactionManager transactionManager,
+            @Value("${user-import.chunk-size}") int chunkSize,
+            @Value("${user-import.hashing-threads}") int hashingThreads,
+            @Value("${spring.jpa.properties.hibernate.jdbc.batch_size}") int batchSize,
+            MeterRegistry meterRegistry) {
+
+        this.appUserRepository = appUserRepository;
+        this.passwordEncoder = passwordEncoder;
+        this.appUserSearchIndex = appUserSearchIndex;
+        this.entityManager = entityManager;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.chunkSize = chunkSize;
+        this.batchSize = batchSize;
+
+        int threads = hashingThreads > 0
+                ? hashingThreads
+                : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("user-import-hashing-");
+        threadFactory.setDaemon(true);
+
+        this.hashingExecutor = Executors.newFixedThreadPool(threads, threadFactory);
+
+        new ExecutorServiceMetrics(hashingExecutor, "user-import-hashing", Tags.empty()).bindTo(meterRegistry);
+    }
+
+    @Override
+    public void importUsers(Iterator<AppUserImportRow> rows, Consumer<AppUserImportResult> resultConsumer) {
+        List<AppUserImportRow> chunk = new ArrayList<>(chunkSize);
+        long created = 0;
+        long rejected = 0;
+
+        while (rows.hasNext()) {
+            chunk.add(rows.next());
+
+            if (chunk.size() == chunkSize || !rows.hasNext()) {
+                for (AppUserImportResult result : importChunk(chunk)) {
+                    if (result.getStatus() == AppUserImportResult.Status.CREATED) {
+                        created++;
+                    } else {
+                        rejected++;
+                    }
+
+                    resultConsumer.accept(result);
+                }
+
+                chunk.clear();
+            }
+        }
+
+        log.info("User import finished with {} users created and {} rows rejected.", created, rejected);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        hashingExecutor.shutdown();
+    }
+
+    private Collection<AppUserImportResult> importChunk(List<AppUserImportRow> chunk) {
+        Map<Long, AppUserImportResult> results = new TreeMap<>();
+        List<AppUserImportRow> candidates = new ArrayList<>();
+        Set<String> usernames = new HashSet<>();
+        Set<String> emails = new HashSet<>();
+
+        for (AppUserImportRow row : chunk) {
+            if (!row.isValid()) {
+                results.put(row.getLine(), AppUserImportResult.invalid(row.getLine(), row.getError()));
+                continue;
+            }
+
+            AppUser appUser = row.getAppUser();
+            appUser.fillNormalizedColumns();
+
+            if (usernames.contains(appUser.getNormalizedUsername())) {
+                results.put(row.getLine(), AppUserImportResult.conflict(
+                        row.getLine(),
+                        "User with the username " + appUser.getUsername() + " appears more than once in the import."
+                ));
+            } else if (emails.contains(appUser.getNormalizedEmail())) {
+                results.put(row.getLine(), AppUserImportResult.conflict(
+                        row.getLine(),
+                        "User with the email " + appUser.getEmail() + " appears more than once in the import."
+                ));
+            } else {
+                usernames.add(appUser.getNormalizedUsername());
+                emails.add(appUser.getNormalizedEmail());
+                candidates.add(row);
+            }
+        }
+
+        List<AppUserImportRow> insertableRows = new ArrayList<>(candidates.size());
+
+        if (!candidates.isEmpty()) {
+            Set<String> takenUsernames = new HashSet<>(appUserRepository.findNormalizedUsernamesIn(usernames));
+            Set<String> takenEmails = new HashSet<>(appUserRepository.findNormalizedEmailsIn(emails));
+
+            for (AppUserImportRow row : candidates) {
+                AppUser appUser = row.getAppUser();
+
+                if (takenUsernames.contains(appUser.getNormalizedUsername())) {
+                    results.put(row.getLine(), AppUserImportResult.conflict(
+                            row.getLine(),
+                            "User with the username " + appUser.getUsername() + " already exists."
+                    ));
+                } else if (takenEmails.contains(appUser.getNormalizedEmail())) {
+                    results.put(row.getLine(), AppUserImportResult.conflict(
+                            row.getLine(),
+                            "User with the email " + appUser.getEmail() + " already exists."
+                    ));
+                } else {
+                    appUser.setRole(AppUserRole.ROLE_USER);
+                    insertableRows.add(row);
+                }
+            }
+        }
+
+        if (!insertableRows.isEmpty()) {
+            hashPasswords(insertableRows);
+            insert(insertableRows, results);
+        }
+
+        return results.values();
+    }
+
+    private void hashPasswords(List<AppUserImportRow> rows) {
+        List<Callable<String>> hashingTasks = new ArrayList<>(rows.size());
+
+        for (AppUserImportRow row : rows) {
+            String password = row.getAppUser().getPassword();
+            hashingTasks.add(() -> passwordEncoder.encode(password));
+        }
+
+        try {
+            List<Future<String>> passwordHashes = hashingExecutor.invokeAll(hashingTasks);
+
+            for (int i = 0; i < rows.size(); i++) {
+                rows.get(i).getAppUser().setPassword(passwordHashes.get(i).get());
+            }
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while hashing imported passwords.", exception);
+        } catch (ExecutionException exception) {
+            throw new IllegalStateException("Could not hash imported password.", exception.getCause());
+        }
+    }
+
+    private void insert(List<AppUserImportRow> rows, Map<Long, AppUserImportResult> results) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> persist(rows));
+
+            for (AppUserImportRow row : rows) {
+                appUserSearchIndex.put(row.getAppUser());
+                results.put(row.getLine(), AppUserImportResult.created(row.getLine(), row.getAppUser().getId()));
+            }
+        } catch (DataIntegrityViolationException exception) {
+            // A user was registered after the chunk was checked, so only the clashing rows should fail.
+            log.info("User import chunk clashed with existing users, inserting its rows one by one.");
+
+            for (AppUserImportRow row : rows) {
+                results.put(row.getLine(), insertOne(row));
+            }
+        }
+    }
+
+    private AppUserImportResult insertOne(AppUserImportRow row) {
+        AppUser appUser = row.getAppUser();
+
+        // Values assigned by the rolled back insert would make the user look detached.
+        appUser.setId(null);
+        appUser.setVersion(null);
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> persist(List.of(row)));
+            appUserSearchIndex.put(appUser);
+            return AppUserImportResult.created(row.getLine(), appUser.getId());
+        } catch (DataIntegrityViolationException exception) {
+            String constraintName = ConstraintViolationUtility.getConstraintName(exception);
+
+            if (constraintName.contains(AppUser.USERNAME_CONSTRAINT)) {
+                return AppUserImportResult.conflict(
+                        row.getLine(),
+                        "User with the username " + appUser.getUsername() + " already exists."
+                );
+            } else if (constraintName.contains(AppUser.EMAIL_CONSTRAINT)) {
+                return AppUserImportResult.conflict(
+                        row.getLine(),
+                        "User with the email " + appUser.getEmail() + " already exists."
+                );
+            }
+
+            throw exception;
+        }
+    }
+
+    /* Flushes and clears the persistence context after every batch, so the
+     * inserts go out as JDBC batches and the inserted users do not pile up
+     * in the persistence context. */
+    private void persist(List<AppUserImportRow> rows) {
+        for (int i = 0; i < rows.size(); i++) {
+            appUserRepository.save(rows.get(i).getAppUser());
+
+            if ((i + 1) % batchSize == 0) {
+                appUserRepository.flush();
+                entityManager.clear();
+            }
+        }
+
+        appUserRepository.flush();
+        entityManager.clear();
+    }
+}
@@ -1,169 +1,457 @@
 package com.example.springbootbase.service.impl;
 
+import com.example.springbootbase.datasource.PrimaryReadContext;
 import com.example.springbootbase.domain.AppUser;
+import com.example.springbootbase.domain.AppUserDetails;
+import com.example.springbootbase.domain.AppUserSummary;
 import com.example.springbootbase.domain.enumeration.AppUserRole;
 import com.example.springbootbase.exception.ConflictException;
 import com.example.springbootbase.exception.NotFoundException;
+import com.example.springbootbase.exception.PreconditionFailedException;
 import com.example.springbootbase.repository.AppUserRepository;
 import com.example.springbootbase.service.AppUserService;
+import com.example.springbootbase.service.cache.AppUserDetailsCache;
+import com.example.springbootbase.service.search.AppUserSearchHit;
+import com.example.springbootbase.service.search.AppUserSearchIndex;
+import com.example.springbootbase.utility.ConstraintViolationUtility;
+import com.example.springbootbase.utility.jwt.TokenRevocationStore;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.security.core.GrantedAuthority;
-import org.springframework.security.core.authority.SimpleGrantedAuthority;
-import org.springframework.security.core.userdetails.User;
+import org.hibernate.Cache;
+import org.hibernate.SessionFactory;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
-
-import javax.transaction.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Service
 @Transactional
 @Slf4j
 public class AppUserServiceImpl implements AppUserService, UserDetailsService {
+    // Ids bound to one IN list, which keeps every statement within the bind parameter limits of databases.
+    private static final int LOOKUP_CHUNK_SIZE = 500;
+
     private final AppUserRepository appUserRepository;
     private final PasswordEncoder passwordEncoder;
+    private final TokenRevocationStore tokenRevocationStore;
+    private final AppUserDetailsCache appUserDetailsCache;
+    private final AppUserSearchIndex appUserSearchIndex;
+    private final EntityManager entityManager;
+    private final PlatformTransactionManager transactionManager;
+    private final TransactionTemplate transactionTemplate;
 
     public AppUserServiceImpl(
             AppUserRepository appUserRepository,
-            PasswordEncoder passwordEncoder) {
+            PasswordEncoder passwordEncoder,
+            TokenRevocationStore tokenRevocationStore,
+            AppUserDetailsCache appUserDetailsCache,
+            AppUserSearchIndex appUserSearchIndex,
+            EntityManager entityManager,
+            PlatformTransactionManager transactionManager) {
 
         this.appUserRepository = appUserRepository;
         this.passwordEncoder = passwordEncoder;
+        this.tokenRevocationStore = tokenRevocationStore;
+        this.appUserDetailsCache = appUserDetailsCache;
+        this.appUserSearchIndex = appUserSearchIndex;
+        this.entityManager = entityManager;
+        this.transactionManager = transactionManager;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
     }
 
+    /* Writes of a password start their transaction only after hashing it,
+     * as a transaction holds its database connection from its start and
+     * hashing takes as long as the strength of the encoder makes it. They
+     * join the transaction of the caller if there is one. */
+
     @Override
+    @Transactional(propagation = Propagation.SUPPORTS, rollbackFor = ConflictException.class)
     public AppUser save(AppUser appUser) throws ConflictException {
-        if (appUserRepository.existsByUsername(appUser.getUsername())) {
-            String message = "User with the username " + appUser.getUsername() + " already exists.";
-            log.info(message);
-            throw new ConflictException(message);
-        }
-
-        if (appUserRepository.existsByEmail(appUser.getEmail())) {
-            String message = "User with the email " + appUser.getEmail() + " already exists.";
-            log.info(message);
-            throw new ConflictException(message);
-        }
+        return save(appUser, AppUserRole.ROLE_USER);
+    }
 
-        appUser.setRole(AppUserRole.ROLE_USER);
+    /* Relies on the unique constraints instead of checking for existing users
+     * first, which takes a single statement and leaves no window between the
+     * check and the insert. The failed insert rolls the transaction back. */
+    @Override
+    @Transactional(propagation = Propagation.SUPPORTS, rollbackFor = ConflictException.class)
+    public AppUser save(AppUser appUser, AppUserRole role) throws ConflictException {
+        appUser.setRole(role);
         appUser.setPassword(passwordEncoder.encode(appUser.getPassword()));
 
-        return appUserRepository.save(appUser);
+        try {
+            return transactionTemplate.execute(status -> {
+                AppUser savedAppUser = appUserRepository.saveAndFlush(appUser);
+                appUserSearchIndex.put(savedAppUser);
+                return savedAppUser;
+            });
+        } catch (DataIntegrityViolationException exception) {
+            throw toConflictException(appUser, exception);
+        }
     }
 
+    /* Reads run in read only transactions, which flush manually and keep no
+     * dirty checking snapshots, and are routed to a replica if there is one.
+     * Users loaded as entities are put into the second level cache, which
+     * login reads the password and role from, so their cache misses are
+     * read from the primary instead, see PrimaryReadContext. */
+
     @Override
+    @Transactional(readOnly = true)
+    @SuppressWarnings("try")
     public Optional<AppUser> find(Long id) {
-        return appUserRepository.findById(id);
+        try (PrimaryReadContext.Scope ignored = PrimaryReadContext.use()) {
+            return appUserRepository.findById(id);
+        }
     }
 
     @Override
+    @Transactional(readOnly = true)
+    @SuppressWarnings("try")
     public Optional<AppUser> findByUsername(String username) {
-        return appUserRepository.findByUsername(username);
+        try (PrimaryReadContext.Scope ignored = PrimaryReadContext.use()) {
+            return appUserRepository.findByNormalizedUsername(AppUser.normalize(username));
+        }
     }
 
     @Override
+    @Transactional(readOnly = true)
+    @SuppressWarnings("try")
     public Optional<AppUser> findByEmail(String email) {
-        return appUserRepository.findByEmail(email);
+        try (PrimaryReadContext.Scope ignored = PrimaryReadContext.use()) {
+            return appUserRepository.findByNormalizedEmail(AppUser.normalize(email));
+        }
     }
 
     @Override
-    public AppUser updateByUsername(String username, AppUser updatedAppUser) throws NotFoundException, ConflictException {
-        Optional<AppUser> userOptional = appUserRepository.findByUsername(username);
+    @Transactional(readOnly = true)
+    public List<AppUserSummary> findAllByIds(Collection<Long> ids) {
+        List<Long> uniqueIds = new ArrayList<>(new LinkedHashSet<>(ids));
+        List<AppUserSummary> appUserSummaries = new ArrayList<>(uniqueIds.size());
+
+        for (int from = 0; from < uniqueIds.size(); from += LOOKUP_CHUNK_SIZE) {
+            List<Long> chunk = uniqueIds.subList(from, Math.min(from + LOOKUP_CHUNK_SIZE, uniqueIds.size()));
+            appUserSummaries.addAll(appUserRepository.findSummariesByIdIn(chunk));
+        }
 
-        if (userOptional.isEmpty()) {
-            String message = "User with the username " + username + " does not exist";
-            log.info(message);
-            throw new NotFoundException(message);
+        return appUserSummaries;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<AppUserSummary> findPage(AppUserRole role, String namePrefix, long afterId, int limit) {
+        String namePattern = namePrefix == null || namePrefix.isEmpty()
+                ? null
+                : namePrefix.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+
+        return appUserRepository.findPageAfter(afterId, role, namePattern, PageRequest.of(0, limit));
+    }
+
+    // Searches only read the in memory index.
+    @Override
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+    public List<AppUserSearchHit> search(String query, int limit) {
+        return appUserSearchIndex.search(query, limit);
+    }
+
+    /* Streamed users stay in the persistence context, so it is cleared after
+     * every fetched block of rows to keep memory use flat. */
+    @Override
+    @Transactional(readOnly = true)
+    public void exportAll(Consumer<AppUser> consumer) {
+        try (Stream<AppUser> appUsers = appUserRepository.streamAll()) {
+            Iterator<AppUser> iterator = appUsers.iterator();
+            long exported = 0;
+
+            while (iterator.hasNext()) {
+                consumer.accept(iterator.next());
+
+                if (++exported % AppUserRepository.STREAM_FETCH_SIZE == 0) {
+                    entityManager.clear();
+                }
+            }
         }
+    }
+
+    @Override
+    public AppUser updateByUsername(String username, AppUser updatedAppUser, Long expectedVersion) throws
+            NotFoundException,
+            ConflictException,
+            PreconditionFailedException {
 
-        AppUser appUser = userOptional.get();
+        String normalizedUsername = AppUser.normalize(username);
 
-        if (!updatedAppUser.getUsername().equals(appUser.getUsername())) {
-            String message = "User with the username " + appUser.getUsername() + " already exists.";
+        // Username and email can not be changed by an update.
+        if (!AppUser.normalize(updatedAppUser.getUsername()).equals(normalizedUsername)) {
+            String message = "User with the username " + username + " already exists.";
             log.info(message);
             throw new ConflictException(message);
         }
 
-        if (!updatedAppUser.getEmail().equals(appUser.getEmail())) {
-            String message = "User with the email " + appUser.getEmail() + " already exists.";
+        AppUser appUser = findExistingByUsername(username);
+
+        int updatedRows = appUserRepository.updateProfileByNormalizedUsername(
+                normalizedUsername,
+                AppUser.normalize(updatedAppUser.getEmail()),
+                updatedAppUser.getFirstName(),
+                updatedAppUser.getLastName(),
+                expectedVersion != null,
+                expectedVersion == null ? 0L : expectedVersion
+        );
+
+        evictCachedAppUser(appUser.getId());
+
+        if (updatedRows == 0) {
+            AppUser currentAppUser = findExistingByUsername(username);
+            checkVersion(currentAppUser, expectedVersion);
+
+            // The user exists with the expected version, so the email did not match.
+            String message = "User with the email " + currentAppUser.getEmail() + " already exists.";
             log.info(message);
             throw new ConflictException(message);
         }
 
-        updatedAppUser.setId(appUser.getId());
-        updatedAppUser.setPassword(appUser.getPassword());
-        updatedAppUser.setRole(appUser.getRole());
+        appUserDetailsCache.invalidate(normalizedUsername);
 
-        return appUserRepository.save(updatedAppUser);
+        AppUser savedAppUser = toUpdatedAppUser(username, appUser, expectedVersion, written -> {
+            written.setFirstName(updatedAppUser.getFirstName());
+            written.setLastName(updatedAppUser.getLastName());
+        });
+
+        appUserSearchIndex.put(savedAppUser);
+        return savedAppUser;
     }
 
+    // Started by hand rather than by a template, which could not pass the checked exceptions through.
     @Override
-    public AppUser updatePasswordByUsername(String username, String password) throws NotFoundException {
-        Optional<AppUser> userOptional = appUserRepository.findByUsername(username);
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public AppUser updatePasswordByUsername(String username, String password, Long expectedVersion) throws
+            NotFoundException,
+            PreconditionFailedException {
+
+        String encodedPassword = passwordEncoder.encode(password);
+        TransactionStatus transaction = transactionManager.getTransaction(TransactionDefinition.withDefaults());
+        AppUser appUser;
+
+        try {
+            appUser = updateEncodedPasswordByUsername(username, encodedPassword, expectedVersion);
+        } catch (Throwable exception) {
+            transactionManager.rollback(transaction);
+            throw exception;
+        }
 
-        if (userOptional.isEmpty()) {
-            String message = "User with the username " + username + " does not exist";
-            log.info(message);
-            throw new NotFoundException(message);
+        transactionManager.commit(transaction);
+        return appUser;
+    }
+
+    private AppUser updateEncodedPasswordByUsername(String username, String encodedPassword, Long expectedVersion)
+            throws NotFoundException, PreconditionFailedException {
+
+        String normalizedUsername = AppUser.normalize(username);
+        AppUser appUser = findExistingByUsername(username);
+
+        int updatedRows = appUserRepository.updatePasswordByNormalizedUsername(
+                normalizedUsername,
+                encodedPassword,
+                expectedVersion != null,
+                expectedVersion == null ? 0L : expectedVersion
+        );
+
+        evictCachedAppUser(appUser.getId());
+
+        if (updatedRows == 0) {
+            checkVersion(findExistingByUsername(username), expectedVersion);
         }
 
-        AppUser appUser = userOptional.get();
-        appUser.setPassword(passwordEncoder.encode(password));
+        // Tokens issued with the old password must not outlive the change. Their subject is the stored username.
+        tokenRevocationStore.revokeAllIssuedBefore(appUser.getUsername(), Instant.now());
+        appUserDetailsCache.invalidate(normalizedUsername);
 
-        return appUserRepository.save(appUser);
+        return toUpdatedAppUser(username, appUser, expectedVersion, written -> written.setPassword(encodedPassword));
     }
 
     @Override
-    public AppUser updateRoleByUsername(String username, AppUserRole role) throws NotFoundException {
-        Optional<AppUser> userOptional = appUserRepository.findByUsername(username);
+    public AppUser updateRoleByUsername(String username, AppUserRole role, Long expectedVersion) throws
+            NotFoundException,
+            PreconditionFailedException {
+
+        String normalizedUsername = AppUser.normalize(username);
+        AppUser appUser = findExistingByUsername(username);
+
+        int updatedRows = appUserRepository.updateRoleByNormalizedUsername(
+                normalizedUsername,
+                role,
+                expectedVersion != null,
+                expectedVersion == null ? 0L : expectedVersion
+        );
 
-        if (userOptional.isEmpty()) {
-            String message = "User with the username " + username + " does not exist";
-            log.info(message);
-            throw new NotFoundException(message);
+        evictCachedAppUser(appUser.getId());
+
+        if (updatedRows == 0) {
+            checkVersion(findExistingByUsername(username), expectedVersion);
         }
 
-        AppUser appUser = userOptional.get();
-        appUser.setRole(role);
+        appUserDetailsCache.invalidate(normalizedUsername);
 
-        return appUserRepository.save(appUser);
+        return toUpdatedAppUser(username, appUser, expectedVersion, written -> written.setRole(role));
     }
 
     @Override
     public void deleteByUsername(String username) throws NotFoundException {
-        if (!appUserRepository.existsByUsername(username)) {
-            String message = "User with the id " + username + " does not exist";
-            log.info(message);
-            throw new NotFoundException(message);
+        AppUser appUser = findExistingByUsername(username);
+
+        appUserRepository.delete(appUser);
+        tokenRevocationStore.revokeAllIssuedBefore(appUser.getUsername(), Instant.now());
+        appUserDetailsCache.invalidate(appUser.getNormalizedUsername());
+        appUserSearchIndex.remove(appUser.getUsername());
+    }
+
+    // Returns how many users had no version, in one statement over the whole table.
+    @Override
+    public int initializeLegacyVersions() {
+        return appUserRepository.initializeMissingVersions();
+    }
+
+    /* Fills the normalized columns of up to batchSize users written before
+     * they existed and returns how many were filled, zero once all users are
+     * normalized. */
+    @Override
+    public int normalizeLegacyUsers(int batchSize) {
+        List<AppUser> appUsers = appUserRepository.findNotNormalized(PageRequest.of(0, batchSize));
+
+        for (AppUser appUser : appUsers) {
+            appUser.fillNormalizedColumns();
         }
 
-        appUserRepository.deleteByUsername(username);
+        appUserRepository.flush();
+        return appUsers.size();
     }
 
+    /* Cache hits must not open a transaction, which would take a database
+     * connection, so the query only joins a transaction if one is active.
+     * Concurrent misses for the same user share one query, see
+     * AppUserDetailsCache. The query reads from the primary, as its result is
+     * cached. */
     @Override
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
-        Optional<AppUser> userOptional = appUserRepository.findByUsername(username);
+        return appUserDetailsCache.get(AppUser.normalize(username), this::loadAppUserDetails);
+    }
 
-        if (userOptional.isEmpty()) {
-            String message = "user with the username " + username + " does not exist.";
+    @SuppressWarnings("try")
+    private AppUserDetails loadAppUserDetails(String normalizedUsername) throws UsernameNotFoundException {
+        Optional<AppUserDetails> userDetailsOptional;
+
+        try (PrimaryReadContext.Scope ignored = PrimaryReadContext.use()) {
+            userDetailsOptional = appUserRepository.findDetailsByNormalizedUsername(normalizedUsername);
+        }
+
+        if (userDetailsOptional.isEmpty()) {
+            String message = "user with the username " + normalizedUsername + " does not exist.";
             log.info(message);
             throw new UsernameNotFoundException(message);
         }
 
-        AppUser appUser = userOptional.get();
+        return userDetailsOptional.get();
+    }
 
-        List<GrantedAuthority> authorities = new ArrayList<>();
-        authorities.add(new SimpleGrantedAuthority(appUser.getRole().name()));
+    /* The targeted updates leave the second level cache alone, so the
+     * updated user is evicted from it by id, right away and once more after
+     * the transaction completes, so a request which loaded the old row
+     * before the commit can not leave it in the cache. Updates do not change
+     * the username, so the natural id cache stays valid. A failed update
+     * evicts the user as well, so its checks read the current row. */
+    private void evictCachedAppUser(Long id) {
+        Cache cache = entityManager.getEntityManagerFactory().unwrap(SessionFactory.class).getCache();
+        cache.evictEntityData(AppUser.class, id);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    cache.evictEntityData(AppUser.class, id);
+                }
+            });
+        }
+    }
 
-        return new User(
-                appUser.getUsername(),
-                appUser.getPassword(),
-                authorities
-        );
+    /* Returns the user written by a targeted update without reading the row
+     * again. The user read before the update, usually from the second level
+     * cache, is detached by the update. If it had the expected version the
+     * update matched, the row held the same values apart from the written
+     * ones, and the update incremented the version. Without an expected
+     * version the update may have followed other changes, and a copy with
+     * another version is outdated, so the row is read again. */
+    private AppUser toUpdatedAppUser(
+            String username,
+            AppUser appUser,
+            Long expectedVersion,
+            Consumer<AppUser> writtenValues) throws NotFoundException {
+
+        if (expectedVersion == null || !expectedVersion.equals(appUser.getVersion())) {
+            return findExistingByUsername(username);
+        }
+
+        writtenValues.accept(appUser);
+        appUser.setVersion(expectedVersion + 1);
+        return appUser;
+    }
+
+    private AppUser findExistingByUsername(String username) throws NotFoundException {
+        Optional<AppUser> userOptional = appUserRepository.findByNormalizedUsername(AppUser.normalize(username));
+
+        if (userOptional.isEmpty()) {
+            String message = "User with the username " + username + " does not exist";
+            log.info(message);
+            throw new NotFoundException(message);
+        }
+
+        return userOptional.get();
+    }
+
+    private void checkVersion(AppUser appUser, Long expectedVersion) throws PreconditionFailedException {
+        if (expectedVersion != null && !expectedVersion.equals(appUser.getVersion())) {
+            String message = "User with the username " + appUser.getUsername() + " has been modified. Expected version "
+                    + expectedVersion + " but found " + appUser.getVersion() + ".";
+            log.info(message);
+            throw new PreconditionFailedException(message);
+        }
+    }
+
+    private ConflictException toConflictException(AppUser appUser, DataIntegrityViolationException exception) {
+        String constraintName = ConstraintViolationUtility.getConstraintName(exception);
+        String message;
+
+        if (constraintName.contains(AppUser.USERNAME_CONSTRAINT)) {
+            message = "User with the username " + appUser.getUsername() + " already exists.";
+        } else if (constraintName.contains(AppUser.EMAIL_CONSTRAINT)) {
+            message = "User with the email " + appUser.getEmail() + " already exists.";
+        } else {
+            throw exception;
+        }
+
+        log.info(message);
+        return new ConflictException(message);
     }
 }
@@ -1,15 +1,18 @@
 package com.example.springbootbase.service.impl;
 
-import com.auth0.jwt.exceptions.SignatureVerificationException;
-import com.auth0.jwt.exceptions.TokenExpiredException;
 import com.example.springbootbase.domain.AppUser;
 import com.example.springbootbase.exception.NotFoundException;
 import com.example.springbootbase.service.AppUserService;
 import com.example.springbootbase.service.AuthService;
 import com.example.springbootbase.utility.JwtUtility;
+import com.example.springbootbase.utility.jwt.JwtAuthenticationToken;
+import com.example.springbootbase.utility.jwt.TokenRevocationStore;
+import com.example.springbootbase.utility.jwt.TokenValidationResult;
+import com.example.springbootbase.utility.jwt.VerifiedToken;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
 import org.springframework.security.core.AuthenticationException;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
@@ -24,41 +27,34 @@ public class AuthServiceImpl implements AuthService {
     private final AppUserService appUserService;
     private final AuthenticationManager authenticationManager;
     private final JwtUtility jwtUtility;
+    private final TokenRevocationStore tokenRevocationStore;
 
     public AuthServiceImpl(
             AppUserService appUserService,
             AuthenticationManager authenticationManager,
-            JwtUtility jwtUtility) {
+            JwtUtility jwtUtility,
+            TokenRevocationStore tokenRevocationStore) {
 
         this.appUserService = appUserService;
         this.authenticationManager = authenticationManager;
         this.jwtUtility = jwtUtility;
+        this.tokenRevocationStore = tokenRevocationStore;
     }
 
     @Override
-    public Map<String, String> login(String username, String password) throws
-            NotFoundException,
-            AuthenticationException {
-
+    public Map<String, String> login(String username, String password) throws AuthenticationException {
         log.info("Logging in user with the username {}.", username);
 
-        Optional<AppUser> userOptional = appUserService.findByUsername(username);
-
-        if (userOptional.isEmpty()) {
-            String message = "User with the username " + username + " does not exist.";
-            log.info(message);
-            throw new NotFoundException(message);
-        }
-
-        AppUser appUser = userOptional.get();
-
         UsernamePasswordAuthenticationToken authenticationToken = new UsernamePasswordAuthenticationToken(
                 username,
                 password
         );
 
-        // Authentication exception will be thrown if authentication was not successful.
-        authenticationManager.authenticate(authenticationToken);
+        /* Authentication exception will be thrown if authentication was not
+         * successful. The authentication provider loads the user once and
+         * returns it as the principal. */
+        Authentication authentication = authenticationManager.authenticate(authenticationToken);
+        AppUser appUser = (AppUser) authentication.getPrincipal();
 
         // If this point is reached, authentication with username and password was successful.
         log.info(
@@ -79,21 +75,39 @@ public class AuthServiceImpl implements AuthService {
 
     @Override
     public Optional<AppUser> getCurrentlyAuthenticatedUser() {
-        String principalUsername = (String) SecurityContextHolder
+        Authentication authentication = SecurityContextHolder
                 .getContext()
-                .getAuthentication()
-                .getPrincipal();
+                .getAuthentication();
+
+        // Claims based authentications are served from the token without a database lookup.
+        if (authentication instanceof JwtAuthenticationToken jwtAuthenticationToken
+                && jwtAuthenticationToken.isClaimsBased()) {
+
+            Optional<AppUser> tokenAppUser = jwtUtility.retrieveAppUser(jwtAuthenticationToken.getCredentials());
+
+            if (tokenAppUser.isPresent()) {
+                return tokenAppUser;
+            }
+        }
+
+        String principalUsername = (String) authentication.getPrincipal();
 
         return appUserService.findByUsername(principalUsername);
     }
 
     @Override
-    public String refreshAccessToken(String refreshToken) throws
-            SignatureVerificationException,
-            TokenExpiredException,
-            NotFoundException {
+    public TokenValidationResult validateAccessToken(String accessToken) {
+        return jwtUtility.validateAccessToken(accessToken);
+    }
+
+    @Override
+    public TokenValidationResult validateRefreshToken(String refreshToken) {
+        return jwtUtility.validateRefreshToken(refreshToken);
+    }
 
-        String username = jwtUtility.validateRefreshTokenAndRetrieveSubject(refreshToken);
+    @Override
+    public String refreshAccessToken(VerifiedToken refreshToken) throws NotFoundException {
+        String username = refreshToken.getSubject();
         Optional<AppUser> userOptional = appUserService.findByUsername(username);
 
         if (userOptional.isEmpty()) {
@@ -106,4 +120,32 @@ public class AuthServiceImpl implements AuthService {
 
         return jwtUtility.generateAccessToken(appUser);
     }
+
+    /**
+     * Revokes the access token of the current request and, if provided,
+     * the refresh token of the same user.
+     */
+    @Override
+    public void logout(String refreshToken) {
+        Authentication authentication = SecurityContextHolder
+                .getContext()
+                .getAuthentication();
+
+        if (authentication instanceof JwtAuthenticationToken jwtAuthenticationToken) {
+            tokenRevocationStore.revoke(jwtAuthenticationToken.getVerifiedToken());
+        }
+
+        if (refreshToken != null && !refreshToken.isBlank()) {
+            TokenValidationResult validationResult = jwtUtility.validateRefreshToken(refreshToken);
+
+            // Users can only revoke their own refresh tokens.
+            if (validationResult.isValid()
+                    && validationResult.getVerifiedToken().getSubject().equals(authentication.getName())) {
+
+                tokenRevocationStore.revoke(validationResult.getVerifiedToken());
+            }
+        }
+
+        log.info("User with the username {} logged out.", authentication.getName());
+    }
 }
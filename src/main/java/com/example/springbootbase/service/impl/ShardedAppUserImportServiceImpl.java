@@ -0,0 +1,61 @@
+package com.example.springbootbase.service.impl;
+
+import com.example.springbootbase.exception.ConflictException;
+import com.example.springbootbase.service.AppUserImportService;
+import com.example.springbootbase.service.AppUserService;
+import com.example.springbootbase.service.importing.AppUserImportResult;
+import com.example.springbootbase.service.importing.AppUserImportRow;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.util.Iterator;
+import java.util.function.Consumer;
+
+/**
+ * Imports users one at a time through the sharded user service, which
+ * registers every user in the directory before inserting it on its shard.
+ * The chunked checks and batched inserts of AppUserImportServiceImpl work
+ * on a single database, so they are not used with sharding.
+ */
+@Service
+@ConditionalOnProperty(name = "sharding.enabled", havingValue = "true")
+@Slf4j
+public class ShardedAppUserImportServiceImpl implements AppUserImportService {
+    private final AppUserService appUserService;
+
+    public ShardedAppUserImportServiceImpl(AppUserService appUserService) {
+        this.appUserService = appUserService;
+    }
+
+    @Override
+    public void importUsers(Iterator<AppUserImportRow> rows, Consumer<AppUserImportResult> resultConsumer) {
+        long created = 0;
+        long rejected = 0;
+
+        while (rows.hasNext()) {
+            AppUserImportRow row = rows.next();
+            AppUserImportResult result;
+
+            if (!row.isValid()) {
+                result = AppUserImportResult.invalid(row.getLine(), row.getError());
+            } else {
+                try {
+                    result = AppUserImportResult.created(row.getLine(), appUserService.save(row.getAppUser()).getId());
+                } catch (ConflictException exception) {
+                    result = AppUserImportResult.conflict(row.getLine(), exception.getMessage());
+                }
+            }
+
+            if (result.getStatus() == AppUserImportResult.Status.CREATED) {
+                created++;
+            } else {
+                rejected++;
+            }
+
+            resultConsumer.accept(result);
+        }
+
+        log.info("User import finished with {} users created and {} rows rejected.", created, rejected);
+    }
+}
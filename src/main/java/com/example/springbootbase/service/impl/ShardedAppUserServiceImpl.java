@@ -0,0 +1,410 @@
+package com.example.springbootbase.service.impl;
+
+import com.example.springbootbase.datasource.ShardContext;
+import com.example.springbootbase.datasource.ShardResolver;
+import com.example.springbootbase.datasource.ShardRoutingDataSource;
+import com.example.springbootbase.domain.AppUser;
+import com.example.springbootbase.domain.AppUserDetails;
+import com.example.springbootbase.domain.AppUserDirectoryEntry;
+import com.example.springbootbase.domain.AppUserSummary;
+import com.example.springbootbase.domain.enumeration.AppUserRole;
+import com.example.springbootbase.exception.ConflictException;
+import com.example.springbootbase.exception.NotFoundException;
+import com.example.springbootbase.exception.PreconditionFailedException;
+import com.example.springbootbase.repository.AppUserDirectoryRepository;
+import com.example.springbootbase.repository.AppUserRepository;
+import com.example.springbootbase.service.AppUserService;
+import com.example.springbootbase.service.cache.AppUserDetailsCache;
+import com.example.springbootbase.service.search.AppUserSearchHit;
+import com.example.springbootbase.utility.ConstraintViolationUtility;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Spreads users over the shards, see ShardResolver. Every user is recorded
+ * in the directory on the primary shard, which allocates its id, keeps
+ * usernames and emails unique across shards and tells which shard holds
+ * it. Work on a single user runs on its shard through AppUserServiceImpl.
+ * Listings query all shards in parallel and merge the results.
+ *
+ * <p>A transaction stays on the shard it started on, so the methods must
+ * not be called in a transaction. Every method runs its own transactions.
+ */
+@Service
+@Primary
+@ConditionalOnProperty(name = "sharding.enabled", havingValue = "true")
+@Slf4j
+public class ShardedAppUserServiceImpl implements AppUserService, UserDetailsService {
+    private static final int LOOKUP_CHUNK_SIZE = 500;
+
+    private final AppUserServiceImpl appUserService;
+    private final AppUserRepository appUserRepository;
+    private final AppUserDirectoryRepository appUserDirectoryRepository;
+    private final AppUserDetailsCache appUserDetailsCache;
+    private final ShardResolver shardResolver;
+    private final List<String> shards;
+    private final ExecutorService shardQueryExecutor;
+
+    public ShardedAppUserServiceImpl(
+            AppUserServiceImpl appUserService,
+            AppUserRepository appUserRepository,
+            AppUserDirectoryRepository appUserDirectoryRepository,
+            AppUserDetailsCache appUserDetailsCache,
+            ShardResolver shardResolver,
+            ShardRoutingDataSource shardRoutingDataSource,
+            MeterRegistry meterRegistry) {
+
+        this.appUserService = appUserService;
+        this.appUserRepository = appUserRepository;
+        this.appUserDirectoryRepository = appUserDirectoryRepository;
+        this.appUserDetailsCache = appUserDetailsCache;
+        this.shardResolver = shardResolver;
+        this.shards = shardRoutingDataSource.getShards();
+
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("user-shard-query-");
+        threadFactory.setDaemon(true);
+
+        this.shardQueryExecutor = Executors.newFixedThreadPool(shards.size(), threadFactory);
+
+        new ExecutorServiceMetrics(shardQueryExecutor, "user-shard-query", Tags.empty()).bindTo(meterRegistry);
+    }
+
+    @Override
+    public AppUser save(AppUser appUser) throws ConflictException {
+        return save(appUser, AppUserRole.ROLE_USER);
+    }
+
+    /* The user is registered in the directory first, whose unique
+     * constraints reject usernames and emails taken on any shard. The entry
+     * is removed again if the user can not be inserted on its shard. */
+    @Override
+    @SuppressWarnings("try")
+    public AppUser save(AppUser appUser, AppUserRole role) throws ConflictException {
+        appUser.fillNormalizedColumns();
+
+        AppUserDirectoryEntry entry = register(appUser);
+        appUser.setId(entry.getId());
+
+        try (ShardContext.Scope ignored = ShardContext.use(entry.getShard())) {
+            return appUserService.save(appUser, role);
+        } catch (ConflictException | RuntimeException exception) {
+            appUser.setId(null);
+            appUserDirectoryRepository.delete(entry);
+            throw exception;
+        }
+    }
+
+    @Override
+    @SuppressWarnings("try")
+    public Optional<AppUser> find(Long id) {
+        Optional<AppUserDirectoryEntry> entryOptional = appUserDirectoryRepository.findById(id);
+
+        if (entryOptional.isEmpty()) {
+            return Optional.empty();
+        }
+
+        try (ShardContext.Scope ignored = ShardContext.use(entryOptional.get().getShard())) {
+            return appUserService.find(id);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("try")
+    public Optional<AppUser> findByUsername(String username) {
+        Optional<AppUserDirectoryEntry> entryOptional =
+                appUserDirectoryRepository.findByNormalizedUsername(AppUser.normalize(username));
+
+        if (entryOptional.isEmpty()) {
+            return Optional.empty();
+        }
+
+        try (ShardContext.Scope ignored = ShardContext.use(entryOptional.get().getShard())) {
+            return appUserService.findByUsername(username);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("try")
+    public Optional<AppUser> findByEmail(String email) {
+        Optional<AppUserDirectoryEntry> entryOptional =
+                appUserDirectoryRepository.findByNormalizedEmail(AppUser.normalize(email));
+
+        if (entryOptional.isEmpty()) {
+            return Optional.empty();
+        }
+
+        try (ShardContext.Scope ignored = ShardContext.use(entryOptional.get().getShard())) {
+            return appUserService.findByEmail(email);
+        }
+    }
+
+    /* Resolves the shards of the ids in the directory, then looks the users
+     * up on all shards holding any of them in parallel. */
+    @Override
+    public List<AppUserSummary> findAllByIds(Collection<Long> ids) {
+        List<Long> uniqueIds = new ArrayList<>(new LinkedHashSet<>(ids));
+        Map<String, List<Long>> idsByShard = new LinkedHashMap<>();
+
+        for (int from = 0; from < uniqueIds.size(); from += LOOKUP_CHUNK_SIZE) {
+            List<Long> chunk = uniqueIds.subList(from, Math.min(from + LOOKUP_CHUNK_SIZE, uniqueIds.size()));
+
+            for (AppUserDirectoryEntry entry : appUserDirectoryRepository.findAllById(chunk)) {
+                idsByShard.computeIfAbsent(entry.getShard(), shard -> new ArrayList<>()).add(entry.getId());
+            }
+        }
+
+        List<AppUserSummary> appUserSummaries = new ArrayList<>(uniqueIds.size());
+
+        for (List<AppUserSummary> shardAppUserSummaries : onShards(
+                idsByShard.keySet(),
+                shard -> appUserService.findAllByIds(idsByShard.get(shard)))) {
+
+            appUserSummaries.addAll(shardAppUserSummaries);
+        }
+
+        return appUserSummaries;
+    }
+
+    /* Every shard returns its first limit users after afterId, so the first
+     * limit users of the merged results are the first limit users overall.
+     * Ids are unique across shards, so the keyset stays valid. */
+    @Override
+    public List<AppUserSummary> findPage(AppUserRole role, String namePrefix, long afterId, int limit) {
+        List<AppUserSummary> appUserSummaries = new ArrayList<>();
+
+        for (List<AppUserSummary> shardAppUserSummaries : onShards(
+                shards,
+                shard -> appUserService.findPage(role, namePrefix, afterId, limit))) {
+
+            appUserSummaries.addAll(shardAppUserSummaries);
+        }
+
+        appUserSummaries.sort(Comparator.comparing(AppUserSummary::getId));
+
+        return appUserSummaries.size() > limit
+                ? new ArrayList<>(appUserSummaries.subList(0, limit))
+                : appUserSummaries;
+    }
+
+    @Override
+    public List<AppUserSearchHit> search(String query, int limit) {
+        return appUserService.search(query, limit);
+    }
+
+    // Users are passed shard by shard, ordered by id within every shard.
+    @Override
+    @SuppressWarnings("try")
+    public void exportAll(Consumer<AppUser> consumer) {
+        for (String shard : shards) {
+            try (ShardContext.Scope ignored = ShardContext.use(shard)) {
+                appUserService.exportAll(consumer);
+            }
+        }
+    }
+
+    @Override
+    @SuppressWarnings("try")
+    public AppUser updateByUsername(String username, AppUser updatedAppUser, Long expectedVersion) throws
+            NotFoundException,
+            ConflictException,
+            PreconditionFailedException {
+
+        try (ShardContext.Scope ignored = ShardContext.use(findEntry(username).getShard())) {
+            return appUserService.updateByUsername(username, updatedAppUser, expectedVersion);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("try")
+    public AppUser updatePasswordByUsername(String username, String password, Long expectedVersion) throws
+            NotFoundException,
+            PreconditionFailedException {
+
+        try (ShardContext.Scope ignored = ShardContext.use(findEntry(username).getShard())) {
+            return appUserService.updatePasswordByUsername(username, password, expectedVersion);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("try")
+    public AppUser updateRoleByUsername(String username, AppUserRole role, Long expectedVersion) throws
+            NotFoundException,
+            PreconditionFailedException {
+
+        try (ShardContext.Scope ignored = ShardContext.use(findEntry(username).getShard())) {
+            return appUserService.updateRoleByUsername(username, role, expectedVersion);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("try")
+    public void deleteByUsername(String username) throws NotFoundException {
+        AppUserDirectoryEntry entry = findEntry(username);
+
+        try (ShardContext.Scope ignored = ShardContext.use(entry.getShard())) {
+            appUserService.deleteByUsername(username);
+        }
+
+        appUserDirectoryRepository.delete(entry);
+    }
+
+    @Override
+    @SuppressWarnings("try")
+    public int initializeLegacyVersions() {
+        int initialized = 0;
+
+        for (String shard : shards) {
+            try (ShardContext.Scope ignored = ShardContext.use(shard)) {
+                initialized += appUserService.initializeLegacyVersions();
+            }
+        }
+
+        return initialized;
+    }
+
+    @Override
+    @SuppressWarnings("try")
+    public int normalizeLegacyUsers(int batchSize) {
+        int normalized = 0;
+
+        for (String shard : shards) {
+            try (ShardContext.Scope ignored = ShardContext.use(shard)) {
+                normalized += appUserService.normalizeLegacyUsers(batchSize);
+            }
+        }
+
+        return normalized;
+    }
+
+    // The directory is only asked on a cache miss, like the query in AppUserServiceImpl.
+    @Override
+    public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
+        return appUserDetailsCache.get(AppUser.normalize(username), this::loadAppUserDetails);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        shardQueryExecutor.shutdown();
+    }
+
+    @SuppressWarnings("try")
+    private AppUserDetails loadAppUserDetails(String normalizedUsername) throws UsernameNotFoundException {
+        Optional<AppUserDirectoryEntry> entryOptional =
+                appUserDirectoryRepository.findByNormalizedUsername(normalizedUsername);
+
+        Optional<AppUserDetails> userDetailsOptional = Optional.empty();
+
+        if (entryOptional.isPresent()) {
+            try (ShardContext.Scope ignored = ShardContext.use(entryOptional.get().getShard())) {
+                userDetailsOptional = appUserRepository.findDetailsByNormalizedUsername(normalizedUsername);
+            }
+        }
+
+        if (userDetailsOptional.isEmpty()) {
+            String message = "user with the username " + normalizedUsername + " does not exist.";
+            log.info(message);
+            throw new UsernameNotFoundException(message);
+        }
+
+        return userDetailsOptional.get();
+    }
+
+    private AppUserDirectoryEntry register(AppUser appUser) throws ConflictException {
+        AppUserDirectoryEntry entry = AppUserDirectoryEntry.builder()
+                .normalizedUsername(appUser.getNormalizedUsername())
+                .normalizedEmail(appUser.getNormalizedEmail())
+                .shard(shardResolver.shardOf(appUser.getNormalizedUsername()))
+                .build();
+
+        try {
+            return appUserDirectoryRepository.saveAndFlush(entry);
+        } catch (DataIntegrityViolationException exception) {
+            String constraintName = ConstraintViolationUtility.getConstraintName(exception);
+            String message;
+
+            if (constraintName.contains(AppUserDirectoryEntry.USERNAME_CONSTRAINT)) {
+                message = "User with the username " + appUser.getUsername() + " already exists.";
+            } else if (constraintName.contains(AppUserDirectoryEntry.EMAIL_CONSTRAINT)) {
+                message = "User with the email " + appUser.getEmail() + " already exists.";
+            } else {
+                throw exception;
+            }
+
+            log.info(message);
+            throw new ConflictException(message);
+        }
+    }
+
+    private AppUserDirectoryEntry findEntry(String username) throws NotFoundException {
+        Optional<AppUserDirectoryEntry> entryOptional =
+                appUserDirectoryRepository.findByNormalizedUsername(AppUser.normalize(username));
+
+        if (entryOptional.isEmpty()) {
+            String message = "User with the username " + username + " does not exist";
+            log.info(message);
+            throw new NotFoundException(message);
+        }
+
+        return entryOptional.get();
+    }
+
+    // Runs the query on the shards in parallel and returns the results in the order of the shards.
+    @SuppressWarnings("try")
+    private <T> List<T> onShards(Collection<String> targetShards, Function<String, T> query) {
+        List<Callable<T>> shardQueries = new ArrayList<>(targetShards.size());
+
+        for (String shard : targetShards) {
+            shardQueries.add(() -> {
+                try (ShardContext.Scope ignored = ShardContext.use(shard)) {
+                    return query.apply(shard);
+                }
+            });
+        }
+
+        try {
+            List<T> results = new ArrayList<>(targetShards.size());
+
+            for (Future<T> result : shardQueryExecutor.invokeAll(shardQueries)) {
+                results.add(result.get());
+            }
+
+            return results;
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while querying the shards.", exception);
+        } catch (ExecutionException exception) {
+            if (exception.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+
+            throw new IllegalStateException("Could not query the shards.", exception.getCause());
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.springbootbase.service.importing;
+
+import lombok.Value;
+
+/**
+ * Outcome of importing a single row. Created rows carry the id of the new
+ * user, rejected rows a message explaining why.
+ */
+@Value
+public class AppUserImportResult {
+    public enum Status {
+        CREATED,
+        INVALID,
+        CONFLICT
+    }
+
+    long line;
+    Status status;
+    Long id;
+    String message;
+
+    public static AppUserImportResult created(long line, Long id) {
+        return new AppUserImportResult(line, Status.CREATED, id, null);
+    }
+
+    public static AppUserImportResult invalid(long line, String message) {
+        return new AppUserImportResult(line, Status.INVALID, null, message);
+    }
+
+    public static AppUserImportResult conflict(long line, String message) {
+        return new AppUserImportResult(line, Status.CONFLICT, null, message);
+    }
+}
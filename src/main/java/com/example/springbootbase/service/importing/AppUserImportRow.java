@@ -0,0 +1,28 @@
+package com.example.springbootbase.service.importing;
+
+import com.example.springbootbase.domain.AppUser;
+import lombok.Value;
+
+/**
+ * A row of a user import. Holds either the user to insert or the reason
+ * why the row could not be read.
+ */
+@Value
+public class AppUserImportRow {
+    // Line of the row in the imported file, starting at 1.
+    long line;
+    AppUser appUser;
+    String error;
+
+    public static AppUserImportRow of(long line, AppUser appUser) {
+        return new AppUserImportRow(line, appUser, null);
+    }
+
+    public static AppUserImportRow invalid(long line, String error) {
+        return new AppUserImportRow(line, null, error);
+    }
+
+    public boolean isValid() {
+        return error == null;
+    }
+}
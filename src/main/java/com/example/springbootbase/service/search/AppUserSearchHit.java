@@ -0,0 +1,17 @@
+package com.example.springbootbase.service.search;
+
+import lombok.Value;
+
+/**
+ * A user matching a search, with the score used to rank it. Higher scores
+ * are better matches.
+ */
+@Value
+public class AppUserSearchHit {
+    Long id;
+    String username;
+    String email;
+    String firstName;
+    String lastName;
+    int score;
+}
@@ -0,0 +1,422 @@
+package com.example.springbootbase.service.search;
+
+import com.example.springbootbase.domain.AppUser;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * In memory search index over the username, email, first name and last
+ * name of all users, for type ahead search without scanning the table.
+ * Queries of three or more characters are matched anywhere in a field
+ * through an inverted index of trigrams, shorter queries match the start of
+ * a field or of a word in it through a sorted index of terms.
+ *
+ * <p>Writes made through the services are applied after their transaction
+ * commits. The index is rebuilt from the database periodically, which
+ * picks up changes made by other instances or outside of the services.
+ * Search latency is published as the user.search timer.
+ */
+@Component
+public class AppUserSearchIndex {
+    private static final Comparator<AppUserSearchHit> RANKING = Comparator
+            .comparingInt(AppUserSearchHit::getScore)
+            .reversed()
+            .thenComparing(AppUserSearchHit::getUsername);
+
+    private final Timer searchTimer;
+
+    private volatile Index index = new Index();
+
+    // Index being built by a rebuild, which receives the writes made in the meantime.
+    private Index rebuildingIndex;
+
+    public AppUserSearchIndex(MeterRegistry meterRegistry) {
+        this.searchTimer = Timer.builder("user.search")
+                .description("Latency of user searches")
+                .publishPercentiles(0.5, 0.99)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+
+        Gauge.builder("user.search.index.size", this, searchIndex -> searchIndex.index.size())
+                .description("Number of users in the search index")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Adds or replaces the user once the current transaction commits, or
+     * right away if there is no transaction.
+     */
+    public void put(AppUser appUser) {
+        Document document = new Document(appUser);
+
+        afterCommit(() -> write(index -> index.put(document)));
+    }
+
+    /**
+     * Removes the user once the current transaction commits, or right away
+     * if there is no transaction.
+     */
+    public void remove(String username) {
+        afterCommit(() -> write(index -> index.remove(username)));
+    }
+
+    /**
+     * Returns up to limit users matching every whitespace separated word of
+     * the query, best matches first.
+     */
+    public List<AppUserSearchHit> search(String query, int limit) {
+        return searchTimer.record(() -> index.search(query, limit));
+    }
+
+    /**
+     * Builds a new index from the users passed to the consumer by the loader
+     * and replaces the current index with it. Searches keep using the current
+     * index until the new one is complete.
+     */
+    public void rebuild(Consumer<Consumer<AppUser>> loader) {
+        Index freshIndex = new Index();
+
+        synchronized (this) {
+            rebuildingIndex = freshIndex;
+        }
+
+        try {
+            loader.accept(appUser -> freshIndex.put(new Document(appUser)));
+
+            synchronized (this) {
+                index = freshIndex;
+            }
+        } finally {
+            synchronized (this) {
+                rebuildingIndex = null;
+            }
+        }
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    // Writes go to both indexes during a rebuild, so the swap can not lose them.
+    private synchronized void write(Consumer<Index> change) {
+        change.accept(index);
+
+        if (rebuildingIndex != null) {
+            change.accept(rebuildingIndex);
+        }
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    private static String normalize(String value) {
+        return value == null ? null : value.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static final class Document {
+        private final Long id;
+        private final String username;
+        private final String email;
+        private final String firstName;
+        private final String lastName;
+
+        // Lower case username, email, first name and last name, in the order of the field weights.
+        private final String[] fields;
+
+        private Document(AppUser appUser) {
+            this.id = appUser.getId();
+            this.username = appUser.getUsername();
+            this.email = appUser.getEmail();
+            this.firstName = appUser.getFirstName();
+            this.lastName = appUser.getLastName();
+            this.fields = new String[]{
+                    normalize(username),
+                    normalize(email),
+                    normalize(firstName),
+                    normalize(lastName)
+            };
+        }
+    }
+
+    private static final class Index {
+        private static final int[] FIELD_WEIGHTS = {4, 3, 2, 2};
+
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+        private final Map<Long, Document> documentsById = new HashMap<>();
+        private final Map<String, Long> idsByUsername = new HashMap<>();
+        private final Map<String, Set<Long>> idsByTrigram = new HashMap<>();
+        private final NavigableMap<String, Set<Long>> idsByTerm = new TreeMap<>();
+
+        int size() {
+            lock.readLock().lock();
+
+            try {
+                return documentsById.size();
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        void put(Document document) {
+            lock.writeLock().lock();
+
+            try {
+                removeDocument(documentsById.get(document.id));
+                removeDocument(documentsById.get(idsByUsername.get(document.username)));
+
+                documentsById.put(document.id, document);
+                idsByUsername.put(document.username, document.id);
+
+                for (String field : document.fields) {
+                    if (field == null) {
+                        continue;
+                    }
+
+                    for (String trigram : trigrams(field)) {
+                        idsByTrigram.computeIfAbsent(trigram, key -> new HashSet<>()).add(document.id);
+                    }
+
+                    for (String term : terms(field)) {
+                        idsByTerm.computeIfAbsent(term, key -> new HashSet<>()).add(document.id);
+                    }
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        void remove(String username) {
+            lock.writeLock().lock();
+
+            try {
+                removeDocument(documentsById.get(idsByUsername.get(username)));
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        List<AppUserSearchHit> search(String query, int limit) {
+            String normalizedQuery = normalize(query);
+
+            if (normalizedQuery == null || normalizedQuery.isEmpty()) {
+                return List.of();
+            }
+
+            String[] words = normalizedQuery.split("\\s+");
+
+            lock.readLock().lock();
+
+            try {
+                // Candidates come from the most selective word, the others only filter them.
+                Set<Long> candidateIds = null;
+
+                for (String word : words) {
+                    Set<Long> wordCandidateIds = candidateIds(word);
+
+                    if (candidateIds == null || wordCandidateIds.size() < candidateIds.size()) {
+                        candidateIds = wordCandidateIds;
+                    }
+                }
+
+                // Keeps the best hits in a heap with the worst of them on top.
+                PriorityQueue<AppUserSearchHit> bestHits = new PriorityQueue<>(limit + 1, RANKING.reversed());
+
+                for (Long candidateId : candidateIds) {
+                    Document document = documentsById.get(candidateId);
+                    int score = score(document, words);
+
+                    if (score > 0) {
+                        bestHits.add(new AppUserSearchHit(
+                                document.id,
+                                document.username,
+                                document.email,
+                                document.firstName,
+                                document.lastName,
+                                score
+                        ));
+
+                        if (bestHits.size() > limit) {
+                            bestHits.poll();
+                        }
+                    }
+                }
+
+                List<AppUserSearchHit> hits = new ArrayList<>(bestHits);
+                hits.sort(RANKING);
+                return hits;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        /* Returns the ids of the users which may contain the word. Words of
+         * three or more characters are looked up by their trigrams, keeping
+         * the ids which have all of them. Shorter words have no trigrams and
+         * are looked up as the prefix of a term. */
+        private Set<Long> candidateIds(String word) {
+            Set<Long> candidateIds = new HashSet<>();
+
+            if (word.length() < 3) {
+                for (Set<Long> ids : idsByTerm.subMap(word, true, word + Character.MAX_VALUE, false).values()) {
+                    candidateIds.addAll(ids);
+                }
+
+                return candidateIds;
+            }
+
+            List<Set<Long>> postings = new ArrayList<>();
+
+            for (String trigram : trigrams(word)) {
+                Set<Long> ids = idsByTrigram.get(trigram);
+
+                if (ids == null) {
+                    return candidateIds;
+                }
+
+                postings.add(ids);
+            }
+
+            postings.sort(Comparator.comparingInt(Set::size));
+            candidateIds.addAll(postings.get(0));
+
+            for (int i = 1; i < postings.size() && !candidateIds.isEmpty(); i++) {
+                candidateIds.retainAll(postings.get(i));
+            }
+
+            return candidateIds;
+        }
+
+        private void removeDocument(Document document) {
+            if (document == null) {
+                return;
+            }
+
+            documentsById.remove(document.id);
+            idsByUsername.remove(document.username, document.id);
+
+            for (String field : document.fields) {
+                if (field == null) {
+                    continue;
+                }
+
+                for (String trigram : trigrams(field)) {
+                    removeId(idsByTrigram, trigram, document.id);
+                }
+
+                for (String term : terms(field)) {
+                    removeId(idsByTerm, term, document.id);
+                }
+            }
+        }
+
+        private static void removeId(Map<String, Set<Long>> idsByKey, String key, Long id) {
+            Set<Long> ids = idsByKey.get(key);
+
+            if (ids != null && ids.remove(id) && ids.isEmpty()) {
+                idsByKey.remove(key);
+            }
+        }
+
+        /* Sums the best score of every word over the fields, or returns zero
+         * if a word does not match any field. A whole field match scores
+         * higher than a match at its start, which scores higher than a match
+         * at the start of a word inside it, which scores higher than a match
+         * anywhere else. */
+        private static int score(Document document, String[] words) {
+            String[] fields = document.fields;
+            int score = 0;
+
+            for (String word : words) {
+                int wordScore = 0;
+
+                for (int i = 0; i < fields.length; i++) {
+                    wordScore = Math.max(wordScore, fieldScore(fields[i], word, FIELD_WEIGHTS[i]));
+                }
+
+                if (wordScore == 0) {
+                    return 0;
+                }
+
+                score += wordScore;
+            }
+
+            return score;
+        }
+
+        private static int fieldScore(String field, String word, int weight) {
+            if (field == null) {
+                return 0;
+            }
+
+            if (field.equals(word)) {
+                return 40 + weight;
+            }
+
+            if (field.startsWith(word)) {
+                return 30 + weight;
+            }
+
+            int index = field.indexOf(word);
+
+            if (index < 0) {
+                return 0;
+            }
+
+            return Character.isLetterOrDigit(field.charAt(index - 1)) ? 10 + weight : 20 + weight;
+        }
+
+        private static Set<String> trigrams(String value) {
+            Set<String> trigrams = new HashSet<>();
+
+            for (int i = 0; i + 3 <= value.length(); i++) {
+                trigrams.add(value.substring(i, i + 3));
+            }
+
+            return trigrams;
+        }
+
+        // The whole value and every word in it, split on anything but letters and digits.
+        private static Set<String> terms(String value) {
+            Set<String> terms = new HashSet<>();
+            terms.add(value);
+
+            for (String word : value.split("[^\\p{L}\\p{N}]+")) {
+                if (!word.isEmpty()) {
+                    terms.add(word);
+                }
+            }
+
+            return terms;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.springbootbase.service.search;
+
+import com.example.springbootbase.service.AppUserService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Rebuilds the search index from the database right after startup and then
+ * periodically, so it catches up with writes which did not go through this
+ * instance.
+ */
+@Component
+@Slf4j
+public class AppUserSearchIndexRefresher {
+    private final AppUserService appUserService;
+    private final AppUserSearchIndex appUserSearchIndex;
+
+    public AppUserSearchIndexRefresher(AppUserService appUserService, AppUserSearchIndex appUserSearchIndex) {
+        this.appUserService = appUserService;
+        this.appUserSearchIndex = appUserSearchIndex;
+    }
+
+    @Scheduled(fixedDelayString = "${user-search.rebuild-interval-millis}")
+    public void refresh() {
+        long start = System.nanoTime();
+
+        appUserSearchIndex.rebuild(appUserService::exportAll);
+
+        log.info(
+                "User search index rebuilt with {} users in {} ms.",
+                appUserSearchIndex.size(),
+                (System.nanoTime() - start) / 1_000_000
+        );
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.springbootbase.utility;
+
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.util.Locale;
+
+public class ConstraintViolationUtility {
+    /* Returns the name of the violated constraint in lower case, or an
+     * empty string if the database did not report it. Databases report the
+     * name in their own case and with their own decorations, so it should be
+     * matched with contains. */
+    public static String getConstraintName(DataIntegrityViolationException exception) {
+        String constraintName = exception.getCause() instanceof ConstraintViolationException constraintViolationException
+                ? constraintViolationException.getConstraintName()
+                : null;
+
+        return constraintName == null ? "" : constraintName.toLowerCase(Locale.ROOT);
+    }
+}
@@ -1,96 +1,303 @@
 package com.example.springbootbase.utility;
 
 import com.auth0.jwt.JWT;
-import com.auth0.jwt.JWTVerifier;
-import com.auth0.jwt.algorithms.Algorithm;
-import com.auth0.jwt.exceptions.JWTVerificationException;
-import com.auth0.jwt.exceptions.SignatureVerificationException;
-import com.auth0.jwt.exceptions.TokenExpiredException;
+import com.auth0.jwt.exceptions.JWTDecodeException;
 import com.auth0.jwt.interfaces.DecodedJWT;
 import com.example.springbootbase.domain.AppUser;
+import com.example.springbootbase.domain.enumeration.AppUserRole;
+import com.example.jwtverifier.HmacAlgorithm;
+import com.example.jwtverifier.JwsAlgorithm;
+import com.example.springbootbase.configuration.JwtKeyProperties;
+import com.example.springbootbase.utility.jwt.AccessTokenFastParser;
+import com.example.springbootbase.utility.jwt.AccessTokenKeys;
+import com.example.springbootbase.utility.jwt.TokenRevocationStore;
+import com.example.springbootbase.utility.jwt.TokenValidationResult;
+import com.example.springbootbase.utility.jwt.TokenValidationResult.Reason;
+import com.example.springbootbase.utility.jwt.VerifiedToken;
+import com.example.springbootbase.utility.jwt.VerifiedTokenCache;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Function;
 
 @Component
 @Slf4j
 public class JwtUtility {
-    @Value("${security.jwt.issuer}")
-    private String issuer;
+    private final String issuer;
+    private final Long accessTokenExpirationTimeMillis;
+    private final Long refreshTokenExpirationTimeMillis;
 
-    @Value("${security.jwt.access-token.secret}")
-    private String accessTokenSecret;
+    /* Algorithms are built once on startup. They are immutable and
+     * thread-safe, so they are shared between all requests instead of
+     * being recreated for every signed or verified token. */
+    private final AccessTokenKeys accessTokenKeys;
+    private final JwsAlgorithm refreshTokenAlgorithm;
 
-    @Value("${security.jwt.access-token.expiration-time-millis}")
-    private Long accessTokenExpirationTimeMillis;
+    // Null if the fast path is disabled.
+    private final AccessTokenFastParser accessTokenFastParser;
 
-    @Value("${security.jwt.refresh-token.secret}")
-    private String refreshTokenSecret;
+    private final VerifiedTokenCache verifiedTokenCache;
+    private final TokenRevocationStore tokenRevocationStore;
 
-    @Value("${security.jwt.refresh-token.expiration-time-millis}")
-    private Long refreshTokenExpirationTimeMillis;
+    public JwtUtility(
+            @Value("${security.jwt.issuer}") String issuer,
+            @Value("${security.jwt.access-token.secret}") String accessTokenSecret,
+            @Value("${security.jwt.access-token.expiration-time-millis}") Long accessTokenExpirationTimeMillis,
+            @Value("${security.jwt.refresh-token.secret}") String refreshTokenSecret,
+            @Value("${security.jwt.refresh-token.expiration-time-millis}") Long refreshTokenExpirationTimeMillis,
+            JwtKeyProperties jwtKeyProperties,
+            @Value("${security.jwt.access-token.fast-path.enabled}") boolean accessTokenFastPathEnabled,
+            VerifiedTokenCache verifiedTokenCache,
+            TokenRevocationStore tokenRevocationStore) {
+
+        this.issuer = issuer;
+        this.accessTokenExpirationTimeMillis = accessTokenExpirationTimeMillis;
+        this.refreshTokenExpirationTimeMillis = refreshTokenExpirationTimeMillis;
+
+        this.accessTokenKeys = new AccessTokenKeys(accessTokenSecret, jwtKeyProperties);
+        this.refreshTokenAlgorithm = new HmacAlgorithm(null, refreshTokenSecret);
+
+        JwsAlgorithm legacyAccessTokenAlgorithm = accessTokenKeys.findAlgorithm(null);
+
+        if (accessTokenFastPathEnabled) {
+            List<JwsAlgorithm> accessTokenAlgorithms = new ArrayList<>(accessTokenKeys.getAlgorithms());
+
+            if (legacyAccessTokenAlgorithm != null) {
+                accessTokenAlgorithms.add(legacyAccessTokenAlgorithm);
+            }
+
+            this.accessTokenFastParser = new AccessTokenFastParser(issuer, accessTokenAlgorithms);
+        } else {
+            this.accessTokenFastParser = null;
+        }
+
+        this.verifiedTokenCache = verifiedTokenCache;
+        this.tokenRevocationStore = tokenRevocationStore;
+    }
 
     public String generateAccessToken(AppUser appUser) {
+        long issuedAtMillis = System.currentTimeMillis();
+
         return JWT.create()
                 .withIssuer(issuer)
-                .withIssuedAt(new Date())
+                .withJWTId(UUID.randomUUID().toString())
+                .withIssuedAt(new Date(issuedAtMillis))
+                .withClaim(VerifiedToken.ISSUED_AT_MILLIS_CLAIM, issuedAtMillis)
                 .withSubject(appUser.getUsername())
-                .withExpiresAt(new Date(System.currentTimeMillis() + accessTokenExpirationTimeMillis))
+                .withExpiresAt(new Date(issuedAtMillis + accessTokenExpirationTimeMillis))
+                .withClaim("id", appUser.getId())
+                .withClaim("firstName", appUser.getFirstName())
+                .withClaim("lastName", appUser.getLastName())
                 .withClaim("email", appUser.getEmail())
                 .withClaim("role", appUser.getRole().name())
-                .sign(Algorithm.HMAC256(accessTokenSecret));
+                .sign(accessTokenKeys.getSigningAlgorithm());
     }
 
     public String generateRefreshToken(AppUser appUser) {
+        long issuedAtMillis = System.currentTimeMillis();
+
         return JWT.create()
                 .withIssuer(issuer)
-                .withIssuedAt(new Date())
+                .withJWTId(UUID.randomUUID().toString())
+                .withIssuedAt(new Date(issuedAtMillis))
+                .withClaim(VerifiedToken.ISSUED_AT_MILLIS_CLAIM, issuedAtMillis)
                 .withSubject(appUser.getUsername())
-                .withExpiresAt(new Date(System.currentTimeMillis() + refreshTokenExpirationTimeMillis))
-                .sign(Algorithm.HMAC256(refreshTokenSecret));
+                .withExpiresAt(new Date(issuedAtMillis + refreshTokenExpirationTimeMillis))
+                .sign(refreshTokenAlgorithm);
     }
 
-    public String validateAccessTokenAndRetrieveSubject(String accessToken) throws
-            SignatureVerificationException,
-            TokenExpiredException {
+    /**
+     * Validates the access token and returns the verified token or the
+     * reason it was rejected. Rejected tokens never throw.
+     */
+    public TokenValidationResult validateAccessToken(String accessToken) {
+        // Revocation is checked after the cache, as tokens can be revoked while cached.
+        TokenValidationResult result = checkRevocation(verifiedTokenCache.get(accessToken, this::verifyAccessToken));
 
-        JWTVerifier jwtVerifier = JWT.require(Algorithm.HMAC256(accessTokenSecret)).withIssuer(issuer).build();
+        if (!result.isValid()) {
+            log.debug("Access token rejected: {}.", result.getReason());
+        }
 
-        try {
-            DecodedJWT decodedJWT = jwtVerifier.verify(accessToken);
-            return decodedJWT.getSubject();
-        } catch (SignatureVerificationException exception) {
-            log.debug("Access token signature not valid");
-            throw exception;
-        } catch (TokenExpiredException exception) {
-            log.debug("Access token has expired");
-            throw exception;
-        } catch (JWTVerificationException exception) {
-            log.debug("Access token is not valid.", exception);
-            throw exception;
+        return result;
+    }
+
+    /**
+     * Returns the JWK set of the public access token keys, which other
+     * services can use to verify access tokens locally.
+     */
+    public Map<String, Object> getPublicJwks() {
+        return accessTokenKeys.getPublicJwks();
+    }
+
+    /**
+     * Reads the user stored in the claims of an access token which has
+     * already been verified. Returns an empty optional for tokens issued
+     * without the user claims.
+     */
+    public Optional<AppUser> retrieveAppUser(String verifiedAccessToken) {
+        DecodedJWT decodedJWT = JWT.decode(verifiedAccessToken);
+        Long id = decodedJWT.getClaim("id").asLong();
+        String role = decodedJWT.getClaim("role").asString();
+
+        if (id == null || role == null) {
+            return Optional.empty();
+        }
+
+        return Optional.of(AppUser.builder()
+                .id(id)
+                .firstName(decodedJWT.getClaim("firstName").asString())
+                .lastName(decodedJWT.getClaim("lastName").asString())
+                .username(decodedJWT.getSubject())
+                .email(decodedJWT.getClaim("email").asString())
+                .role(AppUserRole.valueOf(role))
+                .build());
+    }
+
+    /**
+     * Validates the refresh token and returns the verified token or the
+     * reason it was rejected. Rejected tokens never throw.
+     */
+    public TokenValidationResult validateRefreshToken(String refreshToken) {
+        // Refresh tokens are always signed with the refresh token secret and carry no kid header.
+        TokenValidationResult result = checkRevocation(verifyToken(
+                refreshToken,
+                keyId -> keyId == null ? refreshTokenAlgorithm : null
+        ));
+
+        if (!result.isValid()) {
+            log.debug("Refresh token rejected: {}.", result.getReason());
+        }
+
+        return result;
+    }
+
+    private TokenValidationResult checkRevocation(TokenValidationResult result) {
+        if (result.isValid() && tokenRevocationStore.isRevoked(result.getVerifiedToken())) {
+            return TokenValidationResult.rejected(Reason.REVOKED);
+        }
+
+        return result;
+    }
+
+    private TokenValidationResult verifyAccessToken(String accessToken) {
+        if (accessTokenFastParser != null) {
+            TokenValidationResult result = accessTokenFastParser.parse(accessToken);
+
+            if (result != null) {
+                return result;
+            }
         }
+
+        // Tokens without the kid header were signed with the legacy access token secret.
+        return verifyToken(accessToken, accessTokenKeys::findAlgorithm);
     }
 
-    public String validateRefreshTokenAndRetrieveSubject(String refreshToken) throws
-            SignatureVerificationException,
-            TokenExpiredException {
+    /* General path for tokens the fast path does not recognize. Each check
+     * reports a rejection as a result value. The structural check comes
+     * first, so JWT.decode only fails for base64url segments which do not
+     * contain JSON, and garbage tokens are rejected without an exception. */
+    private TokenValidationResult verifyToken(String token, Function<String, JwsAlgorithm> algorithmsByKeyId) {
+        int payloadSeparator = token.indexOf('.');
+        int signatureSeparator = payloadSeparator < 0 ? -1 : token.indexOf('.', payloadSeparator + 1);
 
-        JWTVerifier jwtVerifier = JWT.require(Algorithm.HMAC256(refreshTokenSecret)).withIssuer(issuer).build();
+        if (!isEncodedSegment(token, 0, payloadSeparator)
+                || !isEncodedSegment(token, payloadSeparator + 1, signatureSeparator)
+                || !isEncodedSegment(token, signatureSeparator + 1, token.length())) {
+
+            return TokenValidationResult.rejected(Reason.MALFORMED);
+        }
+
+        DecodedJWT decodedJWT;
 
         try {
-            DecodedJWT decodedJWT = jwtVerifier.verify(refreshToken);
-            return decodedJWT.getSubject();
-        } catch (SignatureVerificationException exception) {
-            log.debug("Access token signature not valid");
-            throw exception;
-        } catch (TokenExpiredException exception) {
-            log.debug("Access token has expired");
-            throw exception;
-        } catch (JWTVerificationException exception) {
-            log.debug("Access token is not valid.", exception);
-            throw exception;
+            decodedJWT = JWT.decode(token);
+        } catch (JWTDecodeException exception) {
+            return TokenValidationResult.rejected(Reason.MALFORMED);
+        }
+
+        JwsAlgorithm algorithm = algorithmsByKeyId.apply(decodedJWT.getKeyId());
+
+        if (algorithm == null) {
+            return TokenValidationResult.rejected(Reason.UNKNOWN_KEY);
+        }
+
+        if (!algorithm.getName().equals(decodedJWT.getAlgorithm())) {
+            return TokenValidationResult.rejected(Reason.BAD_SIGNATURE);
+        }
+
+        byte[] content = token.substring(0, signatureSeparator).getBytes(StandardCharsets.US_ASCII);
+        byte[] signature = Base64.getUrlDecoder().decode(decodedJWT.getSignature());
+
+        if (!algorithm.verifySignature(content, 0, content.length, signature, 0, signature.length)) {
+            return TokenValidationResult.rejected(Reason.BAD_SIGNATURE);
+        }
+
+        if (!issuer.equals(decodedJWT.getIssuer())) {
+            return TokenValidationResult.rejected(Reason.WRONG_ISSUER);
+        }
+
+        Date issuedAt = decodedJWT.getIssuedAt();
+        Date expiresAt = decodedJWT.getExpiresAt();
+        Date notBefore = decodedJWT.getNotBefore();
+
+        if (decodedJWT.getSubject() == null || issuedAt == null || expiresAt == null) {
+            return TokenValidationResult.rejected(Reason.MALFORMED);
         }
+
+        Instant now = Instant.now();
+
+        if (!expiresAt.toInstant().isAfter(now)) {
+            return TokenValidationResult.rejected(Reason.EXPIRED);
+        }
+
+        if (issuedAt.toInstant().isAfter(now) || (notBefore != null && notBefore.toInstant().isAfter(now))) {
+            return TokenValidationResult.rejected(Reason.NOT_YET_VALID);
+        }
+
+        Long issuedAtMillis = decodedJWT.getClaim(VerifiedToken.ISSUED_AT_MILLIS_CLAIM).asLong();
+
+        return TokenValidationResult.valid(VerifiedToken.builder()
+                .tokenId(decodedJWT.getId())
+                .subject(decodedJWT.getSubject())
+                .role(decodedJWT.getClaim("role").asString())
+                .issuedAt(issuedAtMillis == null ? issuedAt.toInstant() : Instant.ofEpochMilli(issuedAtMillis))
+                .expiresAt(expiresAt.toInstant())
+                .build());
+    }
+
+    /* A token segment must be non-empty unpadded base64url of a length the
+     * decoder accepts. */
+    private static boolean isEncodedSegment(String token, int start, int end) {
+        int length = end - start;
+
+        if (length <= 0 || length % 4 == 1) {
+            return false;
+        }
+
+        for (int i = start; i < end; i++) {
+            char character = token.charAt(i);
+
+            boolean valid = (character >= 'A' && character <= 'Z')
+                    || (character >= 'a' && character <= 'z')
+                    || (character >= '0' && character <= '9')
+                    || character == '-'
+                    || character == '_';
+
+            if (!valid) {
+                return false;
+            }
+        }
+
+        return true;
     }
 }
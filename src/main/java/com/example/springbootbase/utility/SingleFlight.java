@@ -0,0 +1,88 @@
+package com.example.springbootbase.utility;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+/**
+ * Merges concurrent calls for the same key into one. The first caller runs
+ * the call and the callers arriving while it is in flight wait for its
+ * result, or its exception, instead of repeating it. Nothing is locked
+ * while the call runs, in-flight calls are only tracked in a concurrent
+ * map. Waiting is bounded, a caller whose wait runs out makes the call
+ * itself, so a stuck call does not hold up every caller of the key.
+ *
+ * <p>Calls are counted in a counter with the given name, tagged with the
+ * outcome: executed, merged or timed_out.
+ */
+public class SingleFlight<K, V> {
+    private final ConcurrentMap<K, CompletableFuture<V>> callsInFlight = new ConcurrentHashMap<>();
+    private final long maxWaitMillis;
+    private final Counter executedCalls;
+    private final Counter mergedCalls;
+    private final Counter timedOutCalls;
+
+    public SingleFlight(String name, Duration maxWait, MeterRegistry meterRegistry) {
+        this.maxWaitMillis = maxWait.toMillis();
+        this.executedCalls = counter(name, "executed", meterRegistry);
+        this.mergedCalls = counter(name, "merged", meterRegistry);
+        this.timedOutCalls = counter(name, "timed_out", meterRegistry);
+    }
+
+    public V execute(K key, Function<K, V> call) {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> flightInProgress = callsInFlight.putIfAbsent(key, flight);
+
+        if (flightInProgress == null) {
+            executedCalls.increment();
+
+            try {
+                V value = call.apply(key);
+                flight.complete(value);
+                return value;
+            } catch (RuntimeException | Error exception) {
+                flight.completeExceptionally(exception);
+                throw exception;
+            } finally {
+                callsInFlight.remove(key, flight);
+            }
+        }
+
+        mergedCalls.increment();
+
+        try {
+            return flightInProgress.get(maxWaitMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException exception) {
+            timedOutCalls.increment();
+            return call.apply(key);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a call in flight.", exception);
+        } catch (ExecutionException exception) {
+            if (exception.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+
+            if (exception.getCause() instanceof Error error) {
+                throw error;
+            }
+
+            throw new IllegalStateException("Call in flight failed.", exception.getCause());
+        }
+    }
+
+    private static Counter counter(String name, String outcome, MeterRegistry meterRegistry) {
+        return Counter.builder(name)
+                .description("Calls by whether they ran, joined a call in flight or stopped waiting for it")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+}
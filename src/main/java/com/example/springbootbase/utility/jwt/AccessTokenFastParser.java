@@ -0,0 +1,448 @@
+package com.example.springbootbase.utility.jwt;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.exceptions.SignatureGenerationException;
+import com.example.jwtverifier.JwsAlgorithm;
+import com.example.springbootbase.utility.jwt.TokenValidationResult.Reason;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Parser specialized for the access tokens issued by this service. The
+ * header of every token signed with a given key is always the same, so
+ * the parser recognizes the header by comparing it with the headers of
+ * the known keys instead of decoding it. The signature is verified over
+ * the raw token bytes, and the payload is decoded into a reused buffer and
+ * scanned for the few claims the filter needs, without creating any
+ * intermediate strings or JSON tree nodes.
+ *
+ * Tokens with a known header are either accepted or rejected with a reason
+ * here. Returns null for every token it does not recognize, including
+ * tokens with escaped strings, nested claims or unexpected claims, which
+ * must then be verified by the general path.
+ */
+public class AccessTokenFastParser {
+    private static final byte[] TOKEN_ID = ascii("jti");
+    private static final byte[] SUBJECT = ascii("sub");
+    private static final byte[] ISSUER = ascii("iss");
+    private static final byte[] EXPIRES_AT = ascii("exp");
+    private static final byte[] ISSUED_AT = ascii("iat");
+    private static final byte[] ISSUED_AT_MILLIS = ascii(VerifiedToken.ISSUED_AT_MILLIS_CLAIM);
+    private static final byte[] NOT_BEFORE = ascii("nbf");
+    private static final byte[] ROLE = ascii("role");
+
+    private static final int[] BASE64_URL_VALUES = new int[128];
+
+    static {
+        Arrays.fill(BASE64_URL_VALUES, -1);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+
+        for (int i = 0; i < alphabet.length(); i++) {
+            BASE64_URL_VALUES[alphabet.charAt(i)] = i;
+        }
+    }
+
+    private final byte[] issuer;
+    private final List<KnownHeader> knownHeaders;
+    private final ThreadLocal<Buffers> buffers = ThreadLocal.withInitial(Buffers::new);
+
+    public AccessTokenFastParser(String issuer, Collection<JwsAlgorithm> algorithms) {
+        this.issuer = issuer.getBytes(StandardCharsets.UTF_8);
+
+        List<KnownHeader> headers = new ArrayList<>();
+
+        for (JwsAlgorithm algorithm : algorithms) {
+            headers.add(new KnownHeader(encodedHeaderOf(algorithm), algorithm));
+        }
+
+        this.knownHeaders = List.copyOf(headers);
+    }
+
+    public TokenValidationResult parse(String token) {
+        KnownHeader knownHeader = findKnownHeader(token);
+
+        if (knownHeader == null) {
+            return null;
+        }
+
+        int payloadStart = knownHeader.encodedHeader.length() + 1;
+        int signatureSeparator = token.indexOf('.', payloadStart);
+
+        if (signatureSeparator < 0 || token.indexOf('.', signatureSeparator + 1) >= 0) {
+            return null;
+        }
+
+        Buffers threadBuffers = buffers.get();
+        byte[] signingInput = threadBuffers.signingInput(signatureSeparator);
+
+        for (int i = 0; i < signatureSeparator; i++) {
+            char character = token.charAt(i);
+
+            if (character >= 128) {
+                return TokenValidationResult.rejected(Reason.MALFORMED);
+            }
+
+            signingInput[i] = (byte) character;
+        }
+
+        byte[] signature = threadBuffers.signature(token.length() - signatureSeparator);
+        int signatureLength = decodeBase64Url(token, signatureSeparator + 1, token.length(), signature);
+
+        if (signatureLength < 0) {
+            return TokenValidationResult.rejected(Reason.MALFORMED);
+        }
+
+        if (!knownHeader.algorithm.verifySignature(
+                signingInput, 0, signatureSeparator,
+                signature, 0, signatureLength)) {
+
+            return TokenValidationResult.rejected(Reason.BAD_SIGNATURE);
+        }
+
+        byte[] payload = threadBuffers.payload(signatureSeparator - payloadStart);
+        int payloadLength = decodeBase64Url(token, payloadStart, signatureSeparator, payload);
+
+        if (payloadLength < 0) {
+            return TokenValidationResult.rejected(Reason.MALFORMED);
+        }
+
+        return scanPayload(payload, payloadLength);
+    }
+
+    private KnownHeader findKnownHeader(String token) {
+        for (KnownHeader knownHeader : knownHeaders) {
+            int headerLength = knownHeader.encodedHeader.length();
+
+            if (token.length() > headerLength
+                    && token.charAt(headerLength) == '.'
+                    && token.regionMatches(0, knownHeader.encodedHeader, 0, headerLength)) {
+
+                return knownHeader;
+            }
+        }
+
+        return null;
+    }
+
+    /* Scans a flat JSON object with string and integer values. Offsets of
+     * the claims are kept in local variables and strings are only created
+     * for the returned token id, subject and role. */
+    private TokenValidationResult scanPayload(byte[] payload, int length) {
+        int tokenIdStart = -1, tokenIdEnd = -1;
+        int subjectStart = -1, subjectEnd = -1;
+        int roleStart = -1, roleEnd = -1;
+        boolean issuerMatches = false;
+        long expiresAt = -1;
+        long issuedAt = -1;
+        long issuedAtMillis = -1;
+        boolean closed = false;
+
+        int position = skipWhitespace(payload, 0, length);
+
+        if (position >= length || payload[position] != '{') {
+            return null;
+        }
+
+        position = skipWhitespace(payload, position + 1, length);
+
+        if (position < length && payload[position] == '}') {
+            return null;
+        }
+
+        while (position < length) {
+            if (payload[position] != '"') {
+                return null;
+            }
+
+            int keyStart = position + 1;
+            int keyEnd = findStringEnd(payload, keyStart, length);
+
+            if (keyEnd < 0) {
+                return null;
+            }
+
+            position = skipWhitespace(payload, keyEnd + 1, length);
+
+            if (position >= length || payload[position] != ':') {
+                return null;
+            }
+
+            position = skipWhitespace(payload, position + 1, length);
+
+            if (position >= length) {
+                return null;
+            }
+
+            byte valueStartByte = payload[position];
+
+            if (valueStartByte == '"') {
+                int valueStart = position + 1;
+                int valueEnd = findStringEnd(payload, valueStart, length);
+
+                if (valueEnd < 0) {
+                    return null;
+                }
+
+                if (bytesEqual(payload, keyStart, keyEnd, SUBJECT)) {
+                    subjectStart = valueStart;
+                    subjectEnd = valueEnd;
+                } else if (bytesEqual(payload, keyStart, keyEnd, TOKEN_ID)) {
+                    tokenIdStart = valueStart;
+                    tokenIdEnd = valueEnd;
+                } else if (bytesEqual(payload, keyStart, keyEnd, ROLE)) {
+                    roleStart = valueStart;
+                    roleEnd = valueEnd;
+                } else if (bytesEqual(payload, keyStart, keyEnd, ISSUER)) {
+                    issuerMatches = bytesEqual(payload, valueStart, valueEnd, issuer);
+                }
+
+                position = valueEnd + 1;
+            } else if (valueStartByte == '-' || (valueStartByte >= '0' && valueStartByte <= '9')) {
+                int valueEnd = position + 1;
+
+                while (valueEnd < length && payload[valueEnd] >= '0' && payload[valueEnd] <= '9') {
+                    valueEnd++;
+                }
+
+                if (bytesEqual(payload, keyStart, keyEnd, EXPIRES_AT)) {
+                    expiresAt = parseLong(payload, position, valueEnd);
+                } else if (bytesEqual(payload, keyStart, keyEnd, ISSUED_AT)) {
+                    issuedAt = parseLong(payload, position, valueEnd);
+                } else if (bytesEqual(payload, keyStart, keyEnd, ISSUED_AT_MILLIS)) {
+                    issuedAtMillis = parseLong(payload, position, valueEnd);
+                } else if (bytesEqual(payload, keyStart, keyEnd, NOT_BEFORE)) {
+                    return null;
+                }
+
+                position = valueEnd;
+            } else {
+                // Objects, arrays, decimals, booleans and nulls are left to the general path.
+                return null;
+            }
+
+            position = skipWhitespace(payload, position, length);
+
+            if (position >= length) {
+                return null;
+            }
+
+            if (payload[position] == '}') {
+                position = skipWhitespace(payload, position + 1, length);
+                closed = true;
+                break;
+            }
+
+            if (payload[position] != ',') {
+                return null;
+            }
+
+            position = skipWhitespace(payload, position + 1, length);
+        }
+
+        if (!closed || position != length || subjectStart < 0 || expiresAt < 0 || issuedAt < 0) {
+            return null;
+        }
+
+        if (!issuerMatches) {
+            return TokenValidationResult.rejected(Reason.WRONG_ISSUER);
+        }
+
+        long nowSeconds = Instant.now().getEpochSecond();
+
+        if (expiresAt <= nowSeconds) {
+            return TokenValidationResult.rejected(Reason.EXPIRED);
+        }
+
+        if (issuedAt > nowSeconds) {
+            return TokenValidationResult.rejected(Reason.NOT_YET_VALID);
+        }
+
+        return TokenValidationResult.valid(VerifiedToken.builder()
+                .tokenId(utf8(payload, tokenIdStart, tokenIdEnd))
+                .subject(utf8(payload, subjectStart, subjectEnd))
+                .role(utf8(payload, roleStart, roleEnd))
+                .issuedAt(issuedAtMillis < 0 ? Instant.ofEpochSecond(issuedAt) : Instant.ofEpochMilli(issuedAtMillis))
+                .expiresAt(Instant.ofEpochSecond(expiresAt))
+                .build());
+    }
+
+    private static String utf8(byte[] bytes, int start, int end) {
+        return start < 0 ? null : new String(bytes, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    private static int findStringEnd(byte[] bytes, int start, int length) {
+        for (int i = start; i < length; i++) {
+            if (bytes[i] == '"') {
+                return i;
+            }
+
+            // Escaped strings are left to the general path.
+            if (bytes[i] == '\\') {
+                return -1;
+            }
+        }
+
+        return -1;
+    }
+
+    private static int skipWhitespace(byte[] bytes, int position, int length) {
+        while (position < length
+                && (bytes[position] == ' ' || bytes[position] == '\t' || bytes[position] == '\n' || bytes[position] == '\r')) {
+
+            position++;
+        }
+
+        return position;
+    }
+
+    private static boolean bytesEqual(byte[] bytes, int start, int end, byte[] expected) {
+        if (end - start != expected.length) {
+            return false;
+        }
+
+        for (int i = 0; i < expected.length; i++) {
+            if (bytes[start + i] != expected[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /* Returns -1 for negative or too long numbers, which are not valid
+     * timestamps of tokens issued by this service. */
+    private static long parseLong(byte[] bytes, int start, int end) {
+        if (bytes[start] == '-' || end - start > 18) {
+            return -1;
+        }
+
+        long value = 0;
+
+        for (int i = start; i < end; i++) {
+            value = value * 10 + (bytes[i] - '0');
+        }
+
+        return value;
+    }
+
+    /* Decodes unpadded base64url characters of the token into the buffer and
+     * returns the number of decoded bytes or -1 if the input is not valid. */
+    private static int decodeBase64Url(String token, int start, int end, byte[] output) {
+        int length = end - start;
+
+        if (length % 4 == 1) {
+            return -1;
+        }
+
+        int outputPosition = 0;
+        int accumulator = 0;
+        int bits = 0;
+
+        for (int i = start; i < end; i++) {
+            char character = token.charAt(i);
+            int value = character < 128 ? BASE64_URL_VALUES[character] : -1;
+
+            if (value < 0) {
+                return -1;
+            }
+
+            accumulator = ((accumulator << 6) | value) & 0xFFFF;
+            bits += 6;
+
+            if (bits >= 8) {
+                bits -= 8;
+                output[outputPosition++] = (byte) (accumulator >> bits);
+            }
+        }
+
+        return outputPosition;
+    }
+
+    private static String encodedHeaderOf(JwsAlgorithm algorithm) {
+        String probeToken = JWT.create().sign(new HeaderProbeAlgorithm(algorithm));
+        return probeToken.substring(0, probeToken.indexOf('.'));
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static class KnownHeader {
+        private final String encodedHeader;
+        private final JwsAlgorithm algorithm;
+
+        private KnownHeader(String encodedHeader, JwsAlgorithm algorithm) {
+            this.encodedHeader = encodedHeader;
+            this.algorithm = algorithm;
+        }
+    }
+
+    private static class Buffers {
+        private byte[] signingInput = new byte[1024];
+        private byte[] payload = new byte[1024];
+        private byte[] signature = new byte[128];
+
+        private byte[] signingInput(int length) {
+            if (signingInput.length < length) {
+                signingInput = new byte[length];
+            }
+
+            return signingInput;
+        }
+
+        private byte[] payload(int encodedLength) {
+            int length = encodedLength * 3 / 4 + 1;
+
+            if (payload.length < length) {
+                payload = new byte[length];
+            }
+
+            return payload;
+        }
+
+        private byte[] signature(int encodedLength) {
+            int length = encodedLength * 3 / 4 + 1;
+
+            if (signature.length < length) {
+                signature = new byte[length];
+            }
+
+            return signature;
+        }
+    }
+
+    /* Produces the header JWTCreator writes for tokens signed with the key,
+     * without needing the private key of verification only keys. */
+    private static class HeaderProbeAlgorithm extends JwsAlgorithm {
+        private HeaderProbeAlgorithm(JwsAlgorithm algorithm) {
+            super(algorithm.getName(), algorithm.toString(), algorithm.getKeyId());
+        }
+
+        @Override
+        public boolean canSign() {
+            return true;
+        }
+
+        @Override
+        public boolean verifySignature(
+                byte[] content,
+                int contentOffset,
+                int contentLength,
+                byte[] signature,
+                int signatureOffset,
+                int signatureLength) {
+
+            return false;
+        }
+
+        @Override
+        protected byte[] signContent(byte[] content) throws SignatureGenerationException {
+            return new byte[0];
+        }
+    }
+}
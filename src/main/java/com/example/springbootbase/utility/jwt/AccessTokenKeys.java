@@ -0,0 +1,141 @@
+package com.example.springbootbase.utility.jwt;
+
+import com.example.jwtverifier.EcdsaAlgorithm;
+import com.example.jwtverifier.EdDsaAlgorithm;
+import com.example.jwtverifier.HmacAlgorithm;
+import com.example.jwtverifier.Jwks;
+import com.example.jwtverifier.JwsAlgorithm;
+import com.example.springbootbase.configuration.JwtKeyProperties;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.interfaces.ECPrivateKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Access token signing and verification keys. The access token secret is
+ * the legacy key, used for tokens without a kid header. All other keys are
+ * selected by the kid header of a token.
+ */
+public class AccessTokenKeys {
+    private final JwsAlgorithm signingAlgorithm;
+    private final JwsAlgorithm legacyAlgorithm;
+    private final Map<String, JwsAlgorithm> algorithms;
+    private final Map<String, Object> publicJwks;
+
+    public AccessTokenKeys(String secret, JwtKeyProperties jwtKeyProperties) {
+        this.legacyAlgorithm = secret == null || secret.isBlank() ? null : new HmacAlgorithm(null, secret);
+
+        Map<String, JwsAlgorithm> keyAlgorithms = new LinkedHashMap<>();
+        List<Map<String, Object>> publicKeys = new ArrayList<>();
+
+        for (JwtKeyProperties.Key key : jwtKeyProperties.getKeys()) {
+            if (key.getId() == null || key.getId().isBlank()) {
+                throw new IllegalArgumentException("Every access token key must have an id.");
+            }
+
+            JwsAlgorithm algorithm = createAlgorithm(key);
+
+            if (keyAlgorithms.put(key.getId(), algorithm) != null) {
+                throw new IllegalArgumentException("Access token key id " + key.getId() + " is not unique.");
+            }
+
+            Map<String, Object> jwk = Jwks.toJwk(algorithm);
+
+            if (jwk != null) {
+                publicKeys.add(jwk);
+            }
+        }
+
+        this.algorithms = Map.copyOf(keyAlgorithms);
+        this.publicJwks = Map.of("keys", List.copyOf(publicKeys));
+
+        String signingKeyId = jwtKeyProperties.getSigningKeyId();
+
+        if (signingKeyId == null || signingKeyId.isBlank()) {
+            this.signingAlgorithm = legacyAlgorithm;
+        } else {
+            this.signingAlgorithm = algorithms.get(signingKeyId);
+        }
+
+        if (signingAlgorithm == null || !signingAlgorithm.canSign()) {
+            throw new IllegalArgumentException(
+                    "Access token signing key " + signingKeyId + " is not configured or has no private key."
+            );
+        }
+    }
+
+    public JwsAlgorithm getSigningAlgorithm() {
+        return signingAlgorithm;
+    }
+
+    /**
+     * Returns the algorithm of the key with the id or the legacy key if the
+     * id is null. Returns null if there is no such key.
+     */
+    public JwsAlgorithm findAlgorithm(String keyId) {
+        return keyId == null ? legacyAlgorithm : algorithms.get(keyId);
+    }
+
+    public Collection<JwsAlgorithm> getAlgorithms() {
+        return algorithms.values();
+    }
+
+    /**
+     * Returns the JWK set of the public keys, HMAC secrets are never published.
+     */
+    public Map<String, Object> getPublicJwks() {
+        return publicJwks;
+    }
+
+    private static JwsAlgorithm createAlgorithm(JwtKeyProperties.Key key) {
+        try {
+            return switch (String.valueOf(key.getAlgorithm())) {
+                case "HS256" -> new HmacAlgorithm(key.getId(), key.getSecret());
+                case "ES256" -> new EcdsaAlgorithm(
+                        key.getId(),
+                        (ECPublicKey) parsePublicKey("EC", key.getPublicKey()),
+                        (ECPrivateKey) parsePrivateKey("EC", key.getPrivateKey())
+                );
+                case "EdDSA" -> new EdDsaAlgorithm(
+                        key.getId(),
+                        parsePublicKey("Ed25519", key.getPublicKey()),
+                        parsePrivateKey("Ed25519", key.getPrivateKey())
+                );
+                default -> throw new IllegalArgumentException(
+                        "Access token key " + key.getId() + " has unsupported algorithm " + key.getAlgorithm() + "."
+                );
+            };
+        } catch (GeneralSecurityException | IllegalArgumentException | ClassCastException exception) {
+            throw new IllegalArgumentException("Access token key " + key.getId() + " is not valid.", exception);
+        }
+    }
+
+    private static PublicKey parsePublicKey(String keyAlgorithm, String encodedKey) throws GeneralSecurityException {
+        if (encodedKey == null || encodedKey.isBlank()) {
+            throw new IllegalArgumentException("Public key is required.");
+        }
+
+        return KeyFactory.getInstance(keyAlgorithm)
+                .generatePublic(new X509EncodedKeySpec(Base64.getMimeDecoder().decode(encodedKey)));
+    }
+
+    private static PrivateKey parsePrivateKey(String keyAlgorithm, String encodedKey) throws GeneralSecurityException {
+        if (encodedKey == null || encodedKey.isBlank()) {
+            return null;
+        }
+
+        return KeyFactory.getInstance(keyAlgorithm)
+                .generatePrivate(new PKCS8EncodedKeySpec(Base64.getMimeDecoder().decode(encodedKey)));
+    }
+}
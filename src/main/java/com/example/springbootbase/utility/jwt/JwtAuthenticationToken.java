@@ -0,0 +1,54 @@
+package com.example.springbootbase.utility.jwt;
+
+import org.springframework.security.authentication.AbstractAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+
+import java.util.Collection;
+
+/**
+ * Authentication created from a verified access token. The principal is the
+ * username from the token subject, as it was with the previous username and
+ * password based authentication token, and the credentials are the raw
+ * access token. Claims based authentications were created from the claims
+ * of the token alone, without loading the user from the database.
+ */
+public class JwtAuthenticationToken extends AbstractAuthenticationToken {
+    private static final long serialVersionUID = 1L;
+
+    private final String accessToken;
+    private final VerifiedToken verifiedToken;
+    private final boolean claimsBased;
+
+    public JwtAuthenticationToken(
+            String accessToken,
+            VerifiedToken verifiedToken,
+            Collection<? extends GrantedAuthority> authorities,
+            boolean claimsBased) {
+
+        super(authorities);
+
+        this.accessToken = accessToken;
+        this.verifiedToken = verifiedToken;
+        this.claimsBased = claimsBased;
+
+        setAuthenticated(true);
+    }
+
+    @Override
+    public String getPrincipal() {
+        return verifiedToken.getSubject();
+    }
+
+    @Override
+    public String getCredentials() {
+        return accessToken;
+    }
+
+    public VerifiedToken getVerifiedToken() {
+        return verifiedToken;
+    }
+
+    public boolean isClaimsBased() {
+        return claimsBased;
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.springbootbase.utility.jwt;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory denylist of revoked tokens. Single tokens are revoked by their
+ * jti claim and kept in an exact set until they expire, with a Bloom filter
+ * in front so that checking a token which is not revoked costs a few array
+ * reads. All tokens of a user can be revoked at once with a "revoked
+ * before" marker, which is kept until every token issued before it has
+ * expired.
+ *
+ * The store is local to the instance, revocations are not shared between
+ * several instances of the service.
+ */
+@Component
+@Slf4j
+public class TokenRevocationStore {
+    private final int expectedRevocations;
+    private final long maxTokenLifetimeMillis;
+
+    // Revoked token id to its expiration time in epoch seconds.
+    private final Map<String, Long> revokedTokenIds = new ConcurrentHashMap<>();
+
+    // Subject to the epoch millisecond before which all of its tokens are revoked.
+    private final Map<String, Long> revokedBeforeBySubject = new ConcurrentHashMap<>();
+
+    /* Revocations and rebuilds of the Bloom filter are serialized, so a
+     * rebuild can not lose a concurrent revocation. Checks never lock. */
+    private final Object revocationLock = new Object();
+    private volatile RevocationBloomFilter bloomFilter;
+    private int bloomFilterCapacity;
+
+    public TokenRevocationStore(
+            @Value("${security.jwt.revocation.expected-revocations}") int expectedRevocations,
+            @Value("${security.jwt.access-token.expiration-time-millis}") long accessTokenExpirationTimeMillis,
+            @Value("${security.jwt.refresh-token.expiration-time-millis}") long refreshTokenExpirationTimeMillis) {
+
+        this.expectedRevocations = expectedRevocations;
+        // Expiration times are rounded to the second, so tokens may live up to a second longer.
+        this.maxTokenLifetimeMillis = Math.max(accessTokenExpirationTimeMillis, refreshTokenExpirationTimeMillis)
+                + TimeUnit.SECONDS.toMillis(1);
+        this.bloomFilter = new RevocationBloomFilter(expectedRevocations);
+        this.bloomFilterCapacity = expectedRevocations;
+    }
+
+    /**
+     * Revokes a single token until it expires. Tokens issued without the
+     * jti claim can only be revoked with revokeAllIssuedBefore.
+     */
+    public void revoke(VerifiedToken verifiedToken) {
+        String tokenId = verifiedToken.getTokenId();
+
+        if (tokenId == null) {
+            log.debug("Token of the user {} has no id and can not be revoked.", verifiedToken.getSubject());
+            return;
+        }
+
+        synchronized (revocationLock) {
+            revokedTokenIds.put(tokenId, verifiedToken.getExpiresAt().getEpochSecond());
+            bloomFilter.add(tokenId);
+        }
+    }
+
+    /**
+     * Revokes all tokens of the subject issued before the given instant,
+     * to the millisecond, so a token issued right after the revocation, as
+     * on the login following a password change, stays valid. Tokens
+     * issued without the iat_ms claim only have their issue time truncated
+     * to the second, so they are revoked up to the end of their second.
+     */
+    public void revokeAllIssuedBefore(String subject, Instant instant) {
+        revokedBeforeBySubject.merge(subject, instant.toEpochMilli(), Math::max);
+    }
+
+    public boolean isRevoked(VerifiedToken verifiedToken) {
+        if (!revokedBeforeBySubject.isEmpty()) {
+            Long revokedBefore = revokedBeforeBySubject.get(verifiedToken.getSubject());
+
+            if (revokedBefore != null && verifiedToken.getIssuedAt().toEpochMilli() < revokedBefore) {
+                return true;
+            }
+        }
+
+        String tokenId = verifiedToken.getTokenId();
+
+        return tokenId != null && bloomFilter.mightContain(tokenId) && revokedTokenIds.containsKey(tokenId);
+    }
+
+    /**
+     * Drops revoked tokens which have expired and markers older than the
+     * longest token lifetime. The Bloom filter is rebuilt without the
+     * dropped tokens, and resized if more tokens were revoked than it was
+     * sized for.
+     */
+    @Scheduled(fixedDelayString = "${security.jwt.revocation.prune-interval-millis}")
+    public void prune() {
+        Instant now = Instant.now();
+        long nowSeconds = now.getEpochSecond();
+
+        synchronized (revocationLock) {
+            boolean pruned = revokedTokenIds.values().removeIf(expiresAt -> expiresAt <= nowSeconds);
+
+            if (pruned || revokedTokenIds.size() > bloomFilterCapacity) {
+                int capacity = Math.max(expectedRevocations, 2 * revokedTokenIds.size());
+                RevocationBloomFilter rebuiltBloomFilter = new RevocationBloomFilter(capacity);
+
+                revokedTokenIds.keySet().forEach(rebuiltBloomFilter::add);
+                bloomFilter = rebuiltBloomFilter;
+                bloomFilterCapacity = capacity;
+            }
+        }
+
+        revokedBeforeBySubject.values().removeIf(
+                revokedBefore -> revokedBefore + maxTokenLifetimeMillis <= now.toEpochMilli()
+        );
+
+        log.debug(
+                "Token revocation store pruned, {} revoked tokens and {} user markers remain.",
+                revokedTokenIds.size(),
+                revokedBeforeBySubject.size()
+        );
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.springbootbase.utility.jwt;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Outcome of a token validation, either the verified token or the reason
+ * the token was rejected. Rejections are reported as values instead of
+ * exceptions, so rejecting a token costs no more than accepting one. The
+ * rejected results carry no per-token state and are shared.
+ */
+public final class TokenValidationResult {
+    public enum Reason {
+        MALFORMED,
+        UNKNOWN_KEY,
+        BAD_SIGNATURE,
+        WRONG_ISSUER,
+        EXPIRED,
+        NOT_YET_VALID,
+        REVOKED
+    }
+
+    private static final Map<Reason, TokenValidationResult> REJECTIONS = new EnumMap<>(Reason.class);
+
+    static {
+        for (Reason reason : Reason.values()) {
+            REJECTIONS.put(reason, new TokenValidationResult(null, reason));
+        }
+    }
+
+    private final VerifiedToken verifiedToken;
+    private final Reason reason;
+
+    private TokenValidationResult(VerifiedToken verifiedToken, Reason reason) {
+        this.verifiedToken = verifiedToken;
+        this.reason = reason;
+    }
+
+    public static TokenValidationResult valid(VerifiedToken verifiedToken) {
+        return new TokenValidationResult(verifiedToken, null);
+    }
+
+    public static TokenValidationResult rejected(Reason reason) {
+        return REJECTIONS.get(reason);
+    }
+
+    public boolean isValid() {
+        return verifiedToken != null;
+    }
+
+    /**
+     * Returns the verified token, or null if the token was rejected.
+     */
+    public VerifiedToken getVerifiedToken() {
+        return verifiedToken;
+    }
+
+    /**
+     * Returns the rejection reason, or null if the token is valid.
+     */
+    public Reason getReason() {
+        return reason;
+    }
+
+    @Override
+    public String toString() {
+        return isValid() ? "TokenValidationResult(valid)" : "TokenValidationResult(" + reason + ")";
+    }
+}
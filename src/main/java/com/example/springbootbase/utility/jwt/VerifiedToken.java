@@ -0,0 +1,28 @@
+package com.example.springbootbase.utility.jwt;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.time.Instant;
+
+/**
+ * Subject and claims of a token whose signature, issuer and expiration
+ * time have already been verified.
+ */
+@Value
+@Builder
+public class VerifiedToken {
+    /* Issue time in epoch milliseconds. The iat claim only has second
+     * precision, which can not tell a token issued right after a revocation
+     * from one issued right before it. */
+    public static final String ISSUED_AT_MILLIS_CLAIM = "iat_ms";
+
+    // Null for tokens issued without the jti claim.
+    String tokenId;
+    String subject;
+    String role;
+
+    // Millisecond precision, or second precision for tokens issued without the iat_ms claim.
+    Instant issuedAt;
+    Instant expiresAt;
+}
@@ -0,0 +1,137 @@
+package com.example.springbootbase.utility.jwt;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Bounded cache of already verified access tokens. Clients send the same
+ * access token with many requests during its lifetime, so the result of
+ * the signature check is cached until the token expires. Entries are keyed
+ * by the SHA-256 digest of the token, which keeps keys small and means that
+ * a token with a tampered signature never matches a cached entry.
+ */
+@Component
+@Slf4j
+public class VerifiedTokenCache {
+    public static final String CACHE_NAME = "verified-access-tokens";
+
+    /* Rough size of the key, the value object, the timestamps and the
+     * internal cache node of one entry, excluding the claim strings. */
+    private static final int ENTRY_OVERHEAD_BYTES = 256;
+
+    private static final ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException exception) {
+            throw new IllegalStateException("SHA-256 is not available.", exception);
+        }
+    });
+
+    private final Cache<ByteBuffer, TokenValidationResult> cache;
+
+    public VerifiedTokenCache(
+            @Value("${security.jwt.access-token.cache.enabled}") boolean enabled,
+            @Value("${security.jwt.access-token.cache.max-memory-bytes}") long maxMemoryBytes,
+            MeterRegistry meterRegistry) {
+
+        if (!enabled) {
+            log.info("Verified access token cache is disabled.");
+            this.cache = null;
+            return;
+        }
+
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxMemoryBytes)
+                .weigher((ByteBuffer key, TokenValidationResult result) ->
+                        estimateSizeBytes(key, result.getVerifiedToken()))
+                .expireAfter(new ExpireAtTokenExpiration())
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+    }
+
+    /**
+     * Returns the cached validation result for the token. If the token is
+     * not cached, it is validated with the provided function and a valid
+     * result is cached until the token expires. Rejected tokens are never
+     * cached, so a flood of invalid tokens can not evict the valid ones.
+     */
+    public TokenValidationResult get(String token, Function<String, TokenValidationResult> validation) {
+        if (cache == null) {
+            return validation.apply(token);
+        }
+
+        ByteBuffer key = digest(token);
+        TokenValidationResult cachedResult = cache.getIfPresent(key);
+
+        // Cache expiration runs on its own clock, so the wall clock has the final word.
+        if (cachedResult != null && cachedResult.getVerifiedToken().getExpiresAt().isAfter(Instant.now())) {
+            return cachedResult;
+        }
+
+        TokenValidationResult result = validation.apply(token);
+
+        if (result.isValid()) {
+            cache.put(key, result);
+        } else if (cachedResult != null) {
+            cache.invalidate(key);
+        }
+
+        return result;
+    }
+
+    private static ByteBuffer digest(String token) {
+        return ByteBuffer.wrap(SHA_256.get().digest(token.getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    private static int estimateSizeBytes(ByteBuffer key, VerifiedToken verifiedToken) {
+        int claimChars = verifiedToken.getSubject().length()
+                + (verifiedToken.getRole() == null ? 0 : verifiedToken.getRole().length());
+
+        return ENTRY_OVERHEAD_BYTES + key.capacity() + 2 * claimChars;
+    }
+
+    private static class ExpireAtTokenExpiration implements Expiry<ByteBuffer, TokenValidationResult> {
+        @Override
+        public long expireAfterCreate(ByteBuffer key, TokenValidationResult result, long currentTime) {
+            long millisUntilExpiration = result.getVerifiedToken().getExpiresAt().toEpochMilli()
+                    - System.currentTimeMillis();
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(0, millisUntilExpiration));
+        }
+
+        @Override
+        public long expireAfterUpdate(
+                ByteBuffer key,
+                TokenValidationResult result,
+                long currentTime,
+                long currentDuration) {
+
+            return expireAfterCreate(key, result, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(
+                ByteBuffer key,
+                TokenValidationResult result,
+                long currentTime,
+                long currentDuration) {
+
+            return currentDuration;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.springbootbase.controller;
+
+import com.example.springbootbase.datasource.ShardRoutingDataSource;
+import com.example.springbootbase.domain.AppUser;
+import com.example.springbootbase.domain.AppUserDirectoryEntry;
+import com.example.springbootbase.repository.AppUserDirectoryRepository;
+import com.example.springbootbase.service.AppUserService;
+import com.example.springbootbase.utility.JwtUtility;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import javax.persistence.EntityManagerFactory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {
+		"security.admin.email=admin@example.com",
+		"security.admin.password=admin-password",
+		"security.jwt.issuer=test",
+		"security.jwt.access-token.secret=test-access-token-secret",
+		"security.jwt.refresh-token.secret=test-refresh-token-secret"
+})
+@ActiveProfiles("sharding")
+class ShardedAppUserControllerTests {
+	@Autowired
+	private WebApplicationContext webApplicationContext;
+
+	@Autowired
+	private AppUserService appUserService;
+
+	@Autowired
+	private AppUserDirectoryRepository appUserDirectoryRepository;
+
+	@Autowired
+	private ShardRoutingDataSource shardRoutingDataSource;
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	@Autowired
+	private JwtUtility jwtUtility;
+
+	private MockMvc mockMvc;
+
+	/* MockMvc is built here rather than auto configured, so this test shares
+	 * its context with ShardedAppUserServiceImplTests. A second context would
+	 * find the rows of the first on the in-memory shards. */
+	@BeforeEach
+	void setUp() {
+		mockMvc = MockMvcBuilders.webAppContextSetup(webApplicationContext)
+				.apply(springSecurity())
+				.build();
+	}
+
+	/* The directory is read on the primary shard first, so a request which
+	 * kept its connection for the whole request would look the user up on
+	 * the primary shard as well. */
+	@Test
+	void findsAndUpdatesUserStoredOnAnotherShard() throws Exception {
+		AppUserDirectoryEntry entry = null;
+
+		for (int i = 0; entry == null; i++) {
+			AppUser appUser = appUserService.save(AppUser.builder()
+					.firstName("Before")
+					.lastName("Update")
+					.username("web-user-" + i)
+					.email("web-user-" + i + "@example.com")
+					.password("password-of-web-user-" + i)
+					.build());
+
+			AppUserDirectoryEntry savedEntry = appUserDirectoryRepository.findById(appUser.getId()).orElseThrow();
+
+			if (!savedEntry.getShard().equals(ShardRoutingDataSource.PRIMARY_SHARD)) {
+				entry = savedEntry;
+			}
+		}
+
+		// Users read from the second level cache would not show which database was asked.
+		entityManagerFactory.unwrap(SessionFactory.class).getCache().evictAllRegions();
+
+		String username = entry.getNormalizedUsername();
+		String authorization = "Bearer " + jwtUtility.generateAccessToken(
+				appUserService.findByEmail("admin@example.com").orElseThrow()
+		);
+
+		mockMvc.perform(get("/api/users/{id}", entry.getId())
+						.header(HttpHeaders.AUTHORIZATION, authorization))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.username").value(username));
+
+		mockMvc.perform(put("/api/users/{username}", username)
+						.header(HttpHeaders.AUTHORIZATION, authorization)
+						.contentType(MediaType.APPLICATION_JSON)
+						.content("{\"firstName\": \"After\", \"lastName\": \"Update\", "
+								+ "\"username\": \"" + username + "\", \"email\": \"" + entry.getNormalizedEmail() + "\"}"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.firstName").value("After"));
+
+		JdbcTemplate shardJdbcTemplate = new JdbcTemplate(shardRoutingDataSource.getShardDataSource(entry.getShard()));
+
+		assertThat(shardJdbcTemplate.queryForObject(
+				"select first_name from app_user where id = ?",
+				String.class,
+				entry.getId()
+		)).isEqualTo("After");
+	}
+}
@@ -0,0 +1,304 @@
+package com.example.springbootbase.service.impl;
+
+import com.example.springbootbase.domain.AppUser;
+import com.example.springbootbase.domain.AppUserSummary;
+import com.example.springbootbase.domain.enumeration.AppUserRole;
+import com.example.springbootbase.exception.ConflictException;
+import com.example.springbootbase.service.AppUserService;
+import com.example.springbootbase.service.cache.AppUserDetailsCache;
+import com.example.springbootbase.service.search.AppUserSearchIndexRefresher;
+import com.example.springbootbase.utility.JwtUtility;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+
+@SpringBootTest(properties = {
+		"security.admin.email=admin@example.com",
+		"security.admin.password=admin-password",
+		"security.jwt.issuer=test",
+		"security.jwt.access-token.secret=test-access-token-secret",
+		"security.jwt.refresh-token.secret=test-refresh-token-secret",
+		"spring.jpa.properties.hibernate.generate_statistics=true"
+})
+class AppUserServiceImplTests {
+	private static final int CONCURRENT_REGISTRATIONS = 8;
+
+	@Autowired
+	private AppUserService appUserService;
+
+	@Autowired
+	private UserDetailsService userDetailsService;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	@Autowired
+	private JwtUtility jwtUtility;
+
+	@SpyBean
+	private PasswordEncoder passwordEncoder;
+
+	// Its rebuilds run on the scheduler thread and would add their statements to the counted ones.
+	@MockBean
+	private AppUserSearchIndexRefresher appUserSearchIndexRefresher;
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	@Autowired
+	private DataSource dataSource;
+
+	private Statistics statistics;
+
+	/* The second level cache is shared by all test contexts, so it may hold
+	 * users of the same ids and usernames cached by another context. */
+	@BeforeEach
+	void setUp() {
+		entityManagerFactory.unwrap(SessionFactory.class).getCache().evictAllRegions();
+		statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		statistics.clear();
+	}
+
+	@Test
+	void concurrentRegistrationsWithTheSameUsernameInsertOneUser() throws Exception {
+		List<Callable<Boolean>> registrations = new ArrayList<>();
+
+		for (int i = 0; i < CONCURRENT_REGISTRATIONS; i++) {
+			AppUser appUser = appUser("contended", "contended-" + i + "@example.com");
+			registrations.add(() -> register(appUser, "username"));
+		}
+
+		assertThat(runConcurrently(registrations)).isEqualTo(1);
+
+		/* Every registration is a single insert, without any existence checks.
+		 * Ids are allocated in blocks, so the registrations may need one more
+		 * statement to fetch the next block from the sequence. */
+		assertThat(statistics.getQueryExecutionCount()).isZero();
+		assertThat(statistics.getPrepareStatementCount())
+				.isBetween((long) CONCURRENT_REGISTRATIONS, (long) CONCURRENT_REGISTRATIONS + 1);
+		assertThat(appUserService.findByUsername("contended")).isPresent();
+	}
+
+	@Test
+	void concurrentRegistrationsWithTheSameEmailInsertOneUser() throws Exception {
+		List<Callable<Boolean>> registrations = new ArrayList<>();
+
+		for (int i = 0; i < CONCURRENT_REGISTRATIONS; i++) {
+			AppUser appUser = appUser("shared-email-" + i, "shared@example.com");
+			registrations.add(() -> register(appUser, "email"));
+		}
+
+		assertThat(runConcurrently(registrations)).isEqualTo(1);
+		assertThat(statistics.getQueryExecutionCount()).isZero();
+		assertThat(statistics.getPrepareStatementCount())
+				.isBetween((long) CONCURRENT_REGISTRATIONS, (long) CONCURRENT_REGISTRATIONS + 1);
+		assertThat(appUserService.findByEmail("shared@example.com")).isPresent();
+	}
+
+	@Test
+	void registrationWithTakenUsernameReportsUsernameConflict() throws Exception {
+		appUserService.save(appUser("taken", "taken@example.com"));
+
+		assertThatThrownBy(() -> appUserService.save(appUser("taken", "other@example.com")))
+				.isInstanceOf(ConflictException.class)
+				.hasMessageContaining("username taken");
+	}
+
+	@Test
+	void findAllByIdsQueriesOncePerChunkOfIds() throws Exception {
+		List<Long> ids = new ArrayList<>();
+
+		for (int i = 0; i < 3; i++) {
+			ids.add(appUserService.save(appUser("looked-up-" + i, "looked-up-" + i + "@example.com")).getId());
+		}
+
+		// Ids of users which do not exist, which make the lookup span three chunks.
+		for (long missingId = -1; ids.size() < 1100; missingId--) {
+			ids.add(missingId);
+		}
+
+		statistics.clear();
+
+		List<AppUserSummary> appUserSummaries = appUserService.findAllByIds(ids);
+
+		assertThat(appUserSummaries)
+				.extracting(AppUserSummary::getUsername)
+				.containsExactlyInAnyOrder("looked-up-0", "looked-up-1", "looked-up-2");
+		assertThat(statistics.getQueryExecutionCount()).isEqualTo(3);
+	}
+
+	@Test
+	void updateEvictsOnlyTheUpdatedUserFromTheSecondLevelCache() throws Exception {
+		AppUser updatedAppUser = appUserService.save(appUser("evicted", "evicted@example.com"));
+		AppUser otherAppUser = appUserService.save(appUser("kept", "kept@example.com"));
+
+		appUserService.updateRoleByUsername("evicted", AppUserRole.ROLE_ADMIN, updatedAppUser.getVersion());
+
+		statistics.clear();
+
+		assertThat(appUserService.find(otherAppUser.getId())).isPresent();
+		assertThat(statistics.getSecondLevelCacheHitCount()).isEqualTo(1);
+		assertThat(statistics.getPrepareStatementCount()).isZero();
+
+		assertThat(appUserService.find(updatedAppUser.getId()))
+				.hasValueSatisfying(appUser -> assertThat(appUser.getRole()).isEqualTo(AppUserRole.ROLE_ADMIN));
+	}
+
+	@Test
+	void updateWithExpectedVersionRunsOnlyTheUpdateStatement() throws Exception {
+		AppUser appUser = appUserService.save(appUser("updated-once", "updated-once@example.com"));
+
+		// Puts the user into the second level cache, as a user being updated usually is.
+		appUserService.find(appUser.getId());
+		AppUser changedAppUser = appUser("updated-once", "updated-once@example.com");
+		changedAppUser.setFirstName("Changed");
+		statistics.clear();
+
+		AppUser updatedAppUser = appUserService.updateByUsername("updated-once", changedAppUser, appUser.getVersion());
+
+		assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+		assertThat(updatedAppUser.getFirstName()).isEqualTo("Changed");
+		assertThat(updatedAppUser.getVersion()).isEqualTo(appUser.getVersion() + 1);
+		assertThat(appUserService.find(appUser.getId())).contains(updatedAppUser);
+	}
+
+	@Test
+	void userDetailsLoadsOnCacheMissesAreTimed() throws Exception {
+		appUserService.save(appUser("timed", "timed@example.com"));
+
+		Timer loadTimer = meterRegistry.get(AppUserDetailsCache.LOAD_METRIC_NAME).timer();
+		long loadsBefore = loadTimer.count();
+
+		userDetailsService.loadUserByUsername("timed");
+		userDetailsService.loadUserByUsername("timed");
+
+		assertThat(loadTimer.count()).isEqualTo(loadsBefore + 1);
+	}
+
+	@Test
+	void passwordChangeRevokesOnlyTokensIssuedBeforeIt() throws Exception {
+		AppUser appUser = appUserService.save(appUser("password-changed", "password-changed@example.com"));
+		String tokenBeforeChange = jwtUtility.generateAccessToken(appUser);
+
+		AppUser updatedAppUser = appUserService.updatePasswordByUsername("password-changed", "new-password", null);
+
+		// Usually issued within the same second as the change.
+		String tokenAfterChange = jwtUtility.generateAccessToken(updatedAppUser);
+
+		assertThat(jwtUtility.validateAccessToken(tokenBeforeChange).isValid()).isFalse();
+		assertThat(jwtUtility.validateAccessToken(tokenAfterChange).isValid()).isTrue();
+	}
+
+	@Test
+	void passwordsAreHashedBeforeTheTransactionStarts() throws Exception {
+		List<Boolean> transactionActiveWhileHashing = new ArrayList<>();
+
+		doAnswer(invocation -> {
+			transactionActiveWhileHashing.add(TransactionSynchronizationManager.isActualTransactionActive());
+			return invocation.callRealMethod();
+		}).when(passwordEncoder).encode(any());
+
+		appUserService.save(appUser("hashed", "hashed@example.com"));
+		appUserService.updatePasswordByUsername("hashed", "new-password", null);
+
+		assertThat(transactionActiveWhileHashing).containsExactly(false, false);
+	}
+
+	@Test
+	void legacyUsersWithoutVersionCanBeNormalizedAndUpdated() throws Exception {
+		AppUser appUser = appUserService.save(appUser("legacy", "legacy@example.com"));
+
+		// As written before the version and normalized columns existed.
+		new JdbcTemplate(dataSource).update(
+				"update app_user set version = null, normalized_username = null, normalized_email = null where id = ?",
+				appUser.getId()
+		);
+		entityManagerFactory.unwrap(SessionFactory.class).getCache().evictAllRegions();
+
+		assertThat(appUserService.initializeLegacyVersions()).isEqualTo(1);
+		assertThat(appUserService.normalizeLegacyUsers(10)).isEqualTo(1);
+
+		AppUser updatedAppUser = appUserService.updateRoleByUsername("legacy", AppUserRole.ROLE_ADMIN, 1L);
+
+		assertThat(updatedAppUser.getRole()).isEqualTo(AppUserRole.ROLE_ADMIN);
+		assertThat(updatedAppUser.getVersion()).isEqualTo(2);
+	}
+
+	/* Returns true if the user was registered, and checks that a failed
+	 * registration reports a conflict on the expected column. */
+	private boolean register(AppUser appUser, String expectedConflictColumn) {
+		try {
+			appUserService.save(appUser);
+			return true;
+		} catch (ConflictException exception) {
+			assertThat(exception.getMessage()).contains(expectedConflictColumn);
+			return false;
+		}
+	}
+
+	private static int runConcurrently(List<Callable<Boolean>> registrations) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(registrations.size());
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<Boolean>> results = new ArrayList<>();
+
+		try {
+			for (Callable<Boolean> registration : registrations) {
+				results.add(executor.submit(() -> {
+					start.await();
+					return registration.call();
+				}));
+			}
+
+			start.countDown();
+
+			int registered = 0;
+
+			for (Future<Boolean> result : results) {
+				if (result.get(30, TimeUnit.SECONDS)) {
+					registered++;
+				}
+			}
+
+			return registered;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static AppUser appUser(String username, String email) {
+		return AppUser.builder()
+				.firstName("Test")
+				.lastName("User")
+				.username(username)
+				.email(email)
+				.password("password")
+				.build();
+	}
+}
@@ -0,0 +1,123 @@
+package com.example.springbootbase.service.impl;
+
+import com.example.springbootbase.datasource.ShardRoutingDataSource;
+import com.example.springbootbase.domain.AppUser;
+import com.example.springbootbase.domain.AppUserDirectoryEntry;
+import com.example.springbootbase.domain.AppUserSummary;
+import com.example.springbootbase.exception.ConflictException;
+import com.example.springbootbase.repository.AppUserDirectoryRepository;
+import com.example.springbootbase.service.AppUserService;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest(properties = {
+		"security.admin.email=admin@example.com",
+		"security.admin.password=admin-password",
+		"security.jwt.issuer=test",
+		"security.jwt.access-token.secret=test-access-token-secret",
+		"security.jwt.refresh-token.secret=test-refresh-token-secret"
+})
+@ActiveProfiles("sharding")
+class ShardedAppUserServiceImplTests {
+	private static final int USERS = 30;
+
+	@Autowired
+	private AppUserService appUserService;
+
+	@Autowired
+	private AppUserDirectoryRepository appUserDirectoryRepository;
+
+	@Autowired
+	private ShardRoutingDataSource shardRoutingDataSource;
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	/* The second level cache is filled by the inserts and shared by all test
+	 * contexts, so lookups answered from it would not show which shard holds
+	 * the users. */
+	@BeforeEach
+	void setUp() {
+		entityManagerFactory.unwrap(SessionFactory.class).getCache().evictAllRegions();
+	}
+
+	@Test
+	void spreadsUsersOverShardsAndFindsThemOnTheirShards() throws ConflictException {
+		List<Long> ids = new ArrayList<>();
+
+		for (int i = 0; i < USERS; i++) {
+			ids.add(appUserService.save(appUser("sharded-user-" + i, "sharded-user-" + i + "@example.com")).getId());
+		}
+
+		Set<String> shards = ids.stream()
+				.map(id -> appUserDirectoryRepository.findById(id).orElseThrow().getShard())
+				.collect(Collectors.toSet());
+
+		assertThat(shards).hasSizeGreaterThan(1);
+
+		// Every user is stored on the shard recorded in the directory and on no other shard.
+		for (Long id : ids) {
+			AppUserDirectoryEntry entry = appUserDirectoryRepository.findById(id).orElseThrow();
+
+			for (String shard : shardRoutingDataSource.getShards()) {
+				assertThat(countUsers(shard, id)).isEqualTo(shard.equals(entry.getShard()) ? 1 : 0);
+			}
+		}
+
+		// The lookups below have to find the users on their shards instead of in the cache.
+		entityManagerFactory.unwrap(SessionFactory.class).getCache().evictAllRegions();
+
+		for (int i = 0; i < USERS; i++) {
+			assertThat(appUserService.find(ids.get(i)))
+					.hasValueSatisfying(appUser -> assertThat(appUser.getUsername()).startsWith("sharded-user-"));
+			assertThat(appUserService.findByUsername("SHARDED-USER-" + i)).isPresent();
+			assertThat(appUserService.findByEmail(("sharded-user-" + i + "@example.com").toUpperCase(Locale.ROOT)))
+					.isPresent();
+		}
+
+		// The merged page of all shards is in id order.
+		List<Long> pageIds = appUserService.findPage(null, "sharded-user-", 0, USERS).stream()
+				.map(AppUserSummary::getId)
+				.collect(Collectors.toList());
+
+		assertThat(pageIds).isSorted().containsExactlyInAnyOrderElementsOf(ids);
+	}
+
+	@Test
+	void rejectsEmailTakenOnAnyShard() throws ConflictException {
+		appUserService.save(appUser("first-owner", "shared-email@example.com"));
+
+		assertThatThrownBy(() -> appUserService.save(appUser("second-owner", "SHARED-EMAIL@example.com")))
+				.isInstanceOf(ConflictException.class);
+
+		assertThat(appUserService.findByUsername("second-owner")).isEmpty();
+	}
+
+	private int countUsers(String shard, Long id) {
+		return new JdbcTemplate(shardRoutingDataSource.getShardDataSource(shard))
+				.queryForObject("select count(*) from app_user where id = ?", Integer.class, id);
+	}
+
+	private static AppUser appUser(String username, String email) {
+		return AppUser.builder()
+				.username(username)
+				.email(email)
+				.password("password-of-" + username)
+				.build();
+	}
+}